@@ -0,0 +1,16 @@
+#!/bin/sh
+# Builds the JavaFX-free core module jar, an AppCDS archive for the headless Solve launcher and,
+# when GraalVM's native-image is on the PATH, a native executable.
+set -e
+cd "$(dirname "$0")/.."
+rm -rf out/classes
+# inline string concatenation avoids bootstrapping invokedynamic call sites at startup
+javac -XDstringConcat=inline -d out/classes $(find src -name '*.java')
+# CDS only archives classes loaded from jars
+jar --create --file out/puzzles-core.jar --main-class puzzles.common.batch.Solve -C out/classes .
+# training run: archive every class the launcher loads
+java -XX:ArchiveClassesAtExit=out/solve.jsa -p out/puzzles-core.jar -m BFSPuzzleSolver \
+    data/jam/jam-4.txt > /dev/null
+if command -v native-image > /dev/null; then
+    native-image -p out/puzzles-core.jar -m BFSPuzzleSolver -o out/solve
+fi
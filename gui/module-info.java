@@ -0,0 +1,6 @@
+module BFSPuzzleSolver.gui {
+    requires transitive BFSPuzzleSolver;
+    requires transitive javafx.controls;
+    exports puzzles.hoppers.gui;
+    exports puzzles.jam.gui;
+}
@@ -2,6 +2,7 @@ package puzzles.hoppers.gui;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.image.Image;
@@ -10,9 +11,11 @@ import javafx.scene.layout.*;
 import javafx.scene.text.TextAlignment;
 import javafx.stage.FileChooser;
 import puzzles.common.Observer;
+import puzzles.common.PuzzleEvent;
 import puzzles.hoppers.model.HoppersConfig;
 import puzzles.hoppers.model.HoppersModel;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 import java.io.File;
 import java.util.Objects;
@@ -21,7 +24,7 @@ import java.util.Objects;
  * GUI for hopper game
  * @author Kilian Jakstis
  */
-public class HoppersGUI extends Application implements Observer<HoppersModel, String> {
+public class HoppersGUI extends Application implements Observer<HoppersModel, PuzzleEvent<HoppersConfig>> {
 
     /** The resources directory is located directly underneath the gui package */
     private final static String RESOURCES_DIR = "resources/";
@@ -34,7 +37,17 @@ public class HoppersGUI extends Application implements Observer<HoppersModel, St
     private Stage stage;
     private HoppersModel model;
     private HBox notification;
-    private GridPane display;
+    private Node display;
+    /** Direct index of the board's buttons and their reused ImageViews, [col][row]; null when using the canvas */
+    private Button[][] cells;
+    private ImageView[][] views;
+    /** Canvas used instead of buttons for very large boards */
+    private Canvas canvas;
+    /** The board as it was last drawn, [col][row], so only changed cells are redrawn */
+    private char[][] shown;
+    /** Boards with more cells than this are drawn on a canvas, using cells of CANVAS_CELL_SIZE pixels */
+    private final static int CANVAS_CELLS = 400;
+    private final static int CANVAS_CELL_SIZE = 24;
     private HBox buttons;
     private VBox main;
     private Label note;
@@ -44,7 +57,7 @@ public class HoppersGUI extends Application implements Observer<HoppersModel, St
      */
     public void init() {
         String filename = getParameters().getRaw().get(0);
-        this.model = new HoppersModel();
+        this.model = new HoppersModel(Platform::runLater);
         this.model.load(filename);
         this.model.addObserver(this);
     }
@@ -78,12 +91,11 @@ public class HoppersGUI extends Application implements Observer<HoppersModel, St
         buttons.getChildren().addAll(load, reset, hint);
         this.buttons = buttons;
         this.display = makeDisplay(this.model.currentConfig.cols, this.model.currentConfig.rows);
-        this.updateDisplay();
+        this.updateDisplay(this.model.currentConfig);
         main.getChildren().addAll(this.notification, this.display, buttons);
         this.main = main;
         buttons.setAlignment(Pos.CENTER);
         this.notification.setAlignment(Pos.CENTER);
-        display.setAlignment(Pos.CENTER);
         main.setMinSize(400, 400);
         Scene scene = new Scene(main);
         this.stage = stage;
@@ -94,31 +106,32 @@ public class HoppersGUI extends Application implements Observer<HoppersModel, St
 
     /**
      * Displays updates from the model to the user
-     * Updates the gridPane board based on any hint or user movements
+     * Draws the configuration carried by the event and shows its message
      * Also resets the GUI when loading in new puzzle files
      * @param hoppersModel - the model
-     * @param msg - the message to be displayed
+     * @param event - what happened
      */
     @Override
-    public void update(HoppersModel hoppersModel, String msg) {
-        if (msg.split("\s++")[0].equals("Loaded:")){
-            GridPane newDisplay = makeDisplay(this.model.currentConfig.cols, this.model.currentConfig.rows);
+    public void update(HoppersModel hoppersModel, PuzzleEvent<HoppersConfig> event) {
+        HoppersConfig config = event.config();
+        if (event instanceof PuzzleEvent.Loaded<HoppersConfig>){
+            Node newDisplay = makeDisplay(config.cols, config.rows);
             this.main.getChildren().clear();
-            this.note.setText(msg.split("\n")[0]);
             this.display = newDisplay;
             this.main.getChildren().addAll(this.notification, newDisplay, this.buttons);
-            this.stage.setHeight(this.model.currentConfig.rows * 170);
-            this.stage.setWidth(this.model.currentConfig.cols * 110);
-            this.updateDisplay();
+            this.stage.setHeight(config.rows * 170);
+            this.stage.setWidth(config.cols * 110);
         }
         // put update msg in notification label
-        if (hoppersModel.currentConfig.isSolution()){
+        if (event instanceof PuzzleEvent.Solved<HoppersConfig>){
             this.note.setText("You win! (0_0)");
         } else {
-            this.note.setText(msg.split("\n")[0]);
+            this.note.setText(event.message());
         }
         // update the board grid
-        this.updateDisplay();
+        if (config != null) {
+            this.updateDisplay(config);
+        }
     }
 
     /**
@@ -137,22 +150,26 @@ public class HoppersGUI extends Application implements Observer<HoppersModel, St
     }
 
     /**
-     * For a selected display button, relays the coordinates to the model to see if they are a valid selection
-     * @param b - the button clicked
-     */
-    private void select(Button b){
-        String c = GridPane.getColumnIndex(b).toString();
-        String r = GridPane.getRowIndex(b).toString();
-        this.model.select(r, c);
-    }
-
-    /**
-     * Builds the central gridPane board
+     * Builds the central board: a gridPane of buttons, or a canvas for boards too big for buttons
+     * Resets the index of buttons and the record of what has been drawn
      * @param cols - number of cols
      * @param rows - number of rows
-     * @return - this gridPane
+     * @return - the gridPane or canvas
      */
-    private GridPane makeDisplay(int cols, int rows){
+    private Node makeDisplay(int cols, int rows){
+        // zero-filled, which matches no cell, so the first update draws everything
+        this.shown = new char[cols][rows];
+        if (cols * rows > CANVAS_CELLS) {
+            this.cells = null;
+            this.views = null;
+            this.canvas = new Canvas(cols * CANVAS_CELL_SIZE, rows * CANVAS_CELL_SIZE);
+            this.canvas.setOnMouseClicked(e -> this.model.select(String.valueOf((int) (e.getY() / CANVAS_CELL_SIZE)),
+                    String.valueOf((int) (e.getX() / CANVAS_CELL_SIZE))));
+            return this.canvas;
+        }
+        this.canvas = null;
+        this.cells = new Button[cols][rows];
+        this.views = new ImageView[cols][rows];
         GridPane display = new GridPane();
         for (int x = 0; x < cols; x++){
             for (int y = 0; y < rows; y++){
@@ -160,7 +177,13 @@ public class HoppersGUI extends Application implements Observer<HoppersModel, St
                 display.add(b, x, y);
                 b.setMinSize(60, 60);
                 b.setStyle("-fx-border-color: #000000; -fx-border-width: 0px;");
-                b.setOnAction(e -> this.select(b));
+                final String c = String.valueOf(x);
+                final String r = String.valueOf(y);
+                b.setOnAction(e -> this.model.select(r, c));
+                ImageView view = new ImageView();
+                b.setGraphic(view);
+                this.cells[x][y] = b;
+                this.views[x][y] = view;
             }
         }
         display.setAlignment(Pos.CENTER);
@@ -168,40 +191,42 @@ public class HoppersGUI extends Application implements Observer<HoppersModel, St
     }
 
     /**
-     * Loops through all the buttons in the display and updates their picture based on the model's current
-     * configuration's position
+     * Updates the picture of every cell that changed since the last update, based on a configuration's position
+     * @param config - the configuration to show
      */
-    private void updateDisplay(){
-        for (int x = 0; x < this.model.currentConfig.cols; x++){
-            for (int y = 0; y < this.model.currentConfig.rows; y++){
-                char c = this.model.currentConfig.board[x][y];
-                if (c == HoppersConfig.VALID){
-                    Objects.requireNonNull(this.getNodeFromGridPane(this.display, x, y)).setGraphic(new ImageView(this.lilyPad));
-                } else if (c == HoppersConfig.INVALID){
-                    Objects.requireNonNull(this.getNodeFromGridPane(this.display, x, y)).setGraphic(new ImageView(this.water));
-                } else if (c == HoppersConfig.GREEN){
-                    Objects.requireNonNull(this.getNodeFromGridPane(this.display, x, y)).setGraphic(new ImageView(this.greenFrog));
+    private void updateDisplay(HoppersConfig config){
+        char[][] board = config.board;
+        for (int x = 0; x < config.cols; x++){
+            for (int y = 0; y < config.rows; y++){
+                char c = board[x][y];
+                if (this.shown[x][y] == c) {
+                    continue;
+                }
+                this.shown[x][y] = c;
+                Image image = this.imageFor(c);
+                if (this.views != null) {
+                    this.views[x][y].setImage(image);
                 } else {
-                    Objects.requireNonNull(this.getNodeFromGridPane(this.display, x, y)).setGraphic(new ImageView(this.redFrog));
+                    this.canvas.getGraphicsContext2D().drawImage(image, x * CANVAS_CELL_SIZE, y * CANVAS_CELL_SIZE,
+                            CANVAS_CELL_SIZE, CANVAS_CELL_SIZE);
                 }
             }
         }
     }
 
     /**
-     * Get access a specific button
-     * @param gridPane - the gridPane from which the button is taken
-     * @param col - column of desired button
-     * @param row - row of desired button
-     * @return that button
+     * @param c - a board character
+     * @return the picture for that kind of cell
      */
-    private Button getNodeFromGridPane(GridPane gridPane, int col, int row) {
-        for (Node b : gridPane.getChildren()) {
-            if (GridPane.getColumnIndex(b) == col && GridPane.getRowIndex(b) == row) {
-                return (Button) b;
-            }
+    private Image imageFor(char c){
+        if (c == HoppersConfig.VALID){
+            return this.lilyPad;
+        } else if (c == HoppersConfig.INVALID){
+            return this.water;
+        } else if (c == HoppersConfig.GREEN){
+            return this.greenFrog;
         }
-        return null;
+        return this.redFrog;
     }
 
     /**
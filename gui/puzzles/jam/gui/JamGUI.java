@@ -1,37 +1,49 @@
 package puzzles.jam.gui;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
 import javafx.scene.text.TextAlignment;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import puzzles.common.Observer;
+import puzzles.common.PuzzleEvent;
+import puzzles.jam.model.JamConfig;
 import puzzles.jam.model.JamModel;
 import java.io.File;
 import java.util.HashMap;
-import java.util.Objects;
 
 /**
  * JavaFX application class for Jam GUI
  * @author Kilian Jakstis
  */
-public class JamGUI extends Application  implements Observer<JamModel, String> {
+public class JamGUI extends Application  implements Observer<JamModel, PuzzleEvent<JamConfig>> {
 
     private JamModel model; // hold the model for the game
     private HBox notification; // the box node displaying
-    private GridPane display; // the button grid representing the board
+    private Node display; // the button grid representing the board (or the canvas for very large boards)
+    private Button[][] cells; // direct index of the board buttons, [col][row]; null when drawing on a canvas
+    private Canvas canvas; // board canvas used instead of buttons for very large boards
+    private char[][] shown; // the board as it was last drawn, [col][row], so only changed cells are redrawn
     private HBox buttons; // Load, reset, hint buttons
     private VBox main;
     private Label note; // label for showing notifications to user
     private HashMap<Character, String> COLORS; // map for more easily assigning colors to cars
+    private HashMap<Character, String> STYLES; // full button style for every car id, built once from COLORS
+    private HashMap<Character, Color> PAINTS; // canvas fill for every car id, built once from COLORS
     private final static int BUTTON_FONT_SIZE = 20; // font size
     private final static int ICON_SIZE = 75; // icon size
+    private final static int CANVAS_CELLS = 400; // boards with more cells than this are drawn on a canvas
+    private final static int CANVAS_CELL_SIZE = 30; // cell size on the canvas
 
     /**
      * Initial set up for application. Get command line arguments, instantiate Jam model, load the initial Jam file,
@@ -39,7 +51,7 @@ public class JamGUI extends Application  implements Observer<JamModel, String> {
      */
     public void init() {
         String filename = getParameters().getRaw().get(0);
-        this.model = new JamModel();
+        this.model = new JamModel(Platform::runLater);
         this.model.load(filename);
         this.model.addObserver(this);
     }
@@ -53,6 +65,14 @@ public class JamGUI extends Application  implements Observer<JamModel, String> {
     public void start(Stage stage) throws Exception {
         this.COLORS = new HashMap<>();
         this.stockColors();
+        this.STYLES = new HashMap<>();
+        this.PAINTS = new HashMap<>();
+        for (var entry : this.COLORS.entrySet()) {
+            this.STYLES.put(entry.getKey(), "-fx-font-size: " + BUTTON_FONT_SIZE + ";" +
+                    "-fx-background-color: " + entry.getValue() + ";" +
+                    "-fx-font-weight: bold; ");
+            this.PAINTS.put(entry.getKey(), Color.web(entry.getValue()));
+        }
         VBox main = new VBox();
         Label note = new Label("Get the red 'X' car to the right side of the screen!");
         HBox notification = new HBox();
@@ -75,12 +95,11 @@ public class JamGUI extends Application  implements Observer<JamModel, String> {
         buttons.getChildren().addAll(load, reset, hint);
         this.buttons = buttons;
         this.display = makeDisplay(this.model.currentConfig.getCols(), this.model.currentConfig.getRows());
-        this.updateDisplay();
+        this.updateDisplay(this.model.currentConfig);
         main.getChildren().addAll(this.notification, this.display, buttons);
         this.main = main;
         buttons.setAlignment(Pos.CENTER);
         this.notification.setAlignment(Pos.CENTER);
-        display.setAlignment(Pos.CENTER);
         main.setMinSize(400, 400);
         Scene scene = new Scene(main);
         stage.setTitle("Traffic Jam!");
@@ -90,81 +109,107 @@ public class JamGUI extends Application  implements Observer<JamModel, String> {
 
     /**
      * Called by the Model field when the state of the game changes.
-     * Calls the updateDisplay method so that the GUI display reflects the change in game state.
+     * Calls the updateDisplay method so that the GUI display reflects the configuration carried by the event.
      * @param jamModel the model
-     * @param msg the message describing the state change that took place
+     * @param event the event describing the state change that took place
      */
     @Override
-    public void update(JamModel jamModel, String msg) {
-        if (msg.split("\s++")[0].equals("Loaded:")){
+    public void update(JamModel jamModel, PuzzleEvent<JamConfig> event) {
+        JamConfig config = event.config();
+        if (event instanceof PuzzleEvent.Loaded<JamConfig>){
             // load the new file and reset the board accordingly
-            GridPane newDisplay = makeDisplay(this.model.currentConfig.getCols(), this.model.currentConfig.getRows());
+            Node newDisplay = makeDisplay(config.getCols(), config.getRows());
             this.main.getChildren().clear();
-            this.note.setText(msg.split("\n")[0]);
             this.display = newDisplay;
             this.main.getChildren().addAll(this.notification, newDisplay, this.buttons);
-            this.updateDisplay();
         }
         // put the appropriate update message in the notification box
-        if (jamModel.currentConfig.isSolution()){
+        if (event instanceof PuzzleEvent.Solved<JamConfig>){
             this.note.setText("You win!");
         } else {
-            this.note.setText(msg.split("\n")[0]);
+            this.note.setText(event.message());
         }
         // update the GIU
-        this.updateDisplay();
+        if (config != null) {
+            this.updateDisplay(config);
+        }
     }
 
     /**
      * Update the grid board section of the GUI
+     * Only the cells that changed since the last update are redrawn
+     * @param config the configuration to show
      */
-    private void updateDisplay(){
-        // for every button in the board grid, check the model's board and adjust the visual state
-        // as needed
-        for (int x = 0; x < this.model.currentConfig.getCols(); x++){
-            for (int y = 0; y < this.model.currentConfig.getRows(); y++){
-                char c = this.model.currentConfig.boardChars[x][y];
-                Button b = Objects.requireNonNull(this.getNodeFromGridPane(this.display, x, y));
-                b.setStyle("-fx-font-size: " + BUTTON_FONT_SIZE + ";" +
-                        "-fx-background-color: " + this.COLORS.get(c) + ";" +
-                        "-fx-font-weight: bold; ");
-                if (c != '.') {
-                    b.setText(String.valueOf(c));
+    private void updateDisplay(JamConfig config){
+        char[][] board = config.boardChars;
+        for (int x = 0; x < config.getCols(); x++){
+            for (int y = 0; y < config.getRows(); y++){
+                char c = board[x][y];
+                if (this.shown[x][y] == c) {
+                    continue;
+                }
+                this.shown[x][y] = c;
+                if (this.cells != null) {
+                    Button b = this.cells[x][y];
+                    b.setStyle(this.STYLES.getOrDefault(c, this.STYLES.get('.')));
+                    b.setText(c != '.' ? String.valueOf(c) : " ");
                 } else {
-                    b.setText(" ");
+                    this.drawCell(x, y, c);
                 }
             }
         }
     }
 
     /**
-     * When a button is clicked, tell the model which one was selected
-     * @param b the button that was clicked
+     * Draw a single board cell on the canvas
+     * @param x column of the cell
+     * @param y row of the cell
+     * @param c the car id in the cell, or '.'
      */
-    private void select(Button b){
-        int x = GridPane.getColumnIndex(b);
-        int y = GridPane.getRowIndex(b);
-        this.model.select(x, y);
+    private void drawCell(int x, int y, char c){
+        GraphicsContext g = this.canvas.getGraphicsContext2D();
+        g.setFill(this.PAINTS.getOrDefault(c, Color.WHITE));
+        g.fillRect(x * CANVAS_CELL_SIZE, y * CANVAS_CELL_SIZE, CANVAS_CELL_SIZE, CANVAS_CELL_SIZE);
+        g.setStroke(Color.LIGHTGRAY);
+        g.strokeRect(x * CANVAS_CELL_SIZE, y * CANVAS_CELL_SIZE, CANVAS_CELL_SIZE, CANVAS_CELL_SIZE);
+        if (c != '.') {
+            g.setFill(Color.BLACK);
+            g.fillText(String.valueOf(c), x * CANVAS_CELL_SIZE + CANVAS_CELL_SIZE / 3.0,
+                    y * CANVAS_CELL_SIZE + CANVAS_CELL_SIZE * 2 / 3.0);
+        }
     }
 
     /**
-     * Make the board grid display for the GUI
+     * Make the board display for the GUI: a grid of buttons, or a canvas for boards too big for buttons
+     * Resets the index of buttons and the record of what has been drawn
      * @param cols number of cols
      * @param rows number of rows
-     * @return the GridPane object
+     * @return the GridPane or Canvas node
      */
-    private GridPane makeDisplay(int cols, int rows){
+    private Node makeDisplay(int cols, int rows){
+        // nothing drawn yet; no board char is 0 so every cell gets drawn on the first update
+        this.shown = new char[cols][rows];
+        if (cols * rows > CANVAS_CELLS) {
+            this.cells = null;
+            this.canvas = new Canvas(cols * CANVAS_CELL_SIZE, rows * CANVAS_CELL_SIZE);
+            this.canvas.setOnMouseClicked(e -> this.model.select((int) (e.getX() / CANVAS_CELL_SIZE),
+                    (int) (e.getY() / CANVAS_CELL_SIZE)));
+            return this.canvas;
+        }
+        this.canvas = null;
+        this.cells = new Button[cols][rows];
         GridPane display = new GridPane();
         for (int x = 0; x < cols; x++){
             for (int y = 0; y < rows; y++){
                 Button b = new Button();
                 display.add(b, x, y);
-                b.setStyle("-fx-font-size: " + BUTTON_FONT_SIZE + ";" +
-                        "-fx-background-color: " + this.COLORS.get('.') + ";" +
-                        "-fx-font-weight: bold;");
+                b.setStyle(this.STYLES.get('.'));
                 b.setMinSize(ICON_SIZE, ICON_SIZE);
                 b.setMaxSize(ICON_SIZE, ICON_SIZE);
-                b.setOnAction(e -> this.select(b));
+                final int col = x;
+                final int row = y;
+                b.setOnAction(e -> this.model.select(col, row));
+                this.cells[x][y] = b;
             }
         }
         display.setAlignment(Pos.CENTER);
@@ -186,22 +231,6 @@ public class JamGUI extends Application  implements Observer<JamModel, String> {
         }
     }
 
-    /**
-     * Helper for accessing specific buttons
-     * @param gridPane the board display grid
-     * @param col column selected
-     * @param row row selected
-     * @return the button that corresponds to (col, row)
-     */
-    private Button getNodeFromGridPane(GridPane gridPane, int col, int row) {
-        for (Node b : gridPane.getChildren()) {
-            if (GridPane.getColumnIndex(b) == col && GridPane.getRowIndex(b) == row) {
-                return (Button) b;
-            }
-        }
-        return null;
-    }
-
     /**
      * Put colors into the color hashmap for every letter in the alphabet
      * To get the car's color, just hash its ID and check the color map
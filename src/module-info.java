@@ -1,9 +1,10 @@
 module BFSPuzzleSolver {
-    requires transitive javafx.controls;
+    // optional: the batch kernels check for it at runtime and fall back to scalar code
+    requires static jdk.incubator.vector;
+
     exports puzzles.common;
+    exports puzzles.common.batch;
     exports puzzles.common.solver;
-    exports puzzles.hoppers.gui;
     exports puzzles.hoppers.model;
-    exports puzzles.jam.gui;
     exports puzzles.jam.model;
-}
\ No newline at end of file
+}
@@ -0,0 +1,94 @@
+package puzzles.common;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+/**
+ * Delivers a model's events to its observers asynchronously on an executor (for a GUI, its UI thread)
+ * Events are queued in order. A state event that arrives while the previous queued event is also a state
+ * event replaces it, so a burst of moves between two deliveries only draws the latest state.
+ * @param <Subject> the type of the observed model
+ * @param <Event> the type of event sent to the observers
+ * @author Kilian Jakstis
+ */
+public class EventDispatcher<Subject, Event> {
+    private final Subject subject; // the model the events come from
+    private final Executor executor; // runs the deliveries
+    private final Predicate<Event> coalescable; // which events can be replaced by a newer one of the same kind
+    private final List<Observer<Subject, Event>> observers = new CopyOnWriteArrayList<>();
+    private final ArrayDeque<Event> pending = new ArrayDeque<>(); // undelivered events, guarded by this
+    private boolean scheduled = false; // is a delivery task queued on the executor? guarded by this
+
+    /**
+     * Makes a dispatcher
+     * @param subject the model the events come from
+     * @param executor runs the deliveries, e.g. a GUI toolkit's runLater
+     * @param coalescable which events can be replaced by a newer coalescable event
+     */
+    public EventDispatcher(Subject subject, Executor executor, Predicate<Event> coalescable) {
+        this.subject = subject;
+        this.executor = executor;
+        this.coalescable = coalescable;
+    }
+
+    /**
+     * Makes an executor that delivers events on its own daemon thread, for models without a GUI
+     * @param name the thread's name
+     * @return the executor
+     */
+    public static Executor background(String name) {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Adds an observer
+     * @param observer the observer
+     */
+    public void addObserver(Observer<Subject, Event> observer) {
+        this.observers.add(observer);
+    }
+
+    /**
+     * Queues an event for delivery; events posted while nobody is observing are dropped
+     * @param event the event
+     */
+    public void post(Event event) {
+        if (this.observers.isEmpty()) return;
+        synchronized (this) {
+            Event last = this.pending.peekLast();
+            if (last != null && this.coalescable.test(last) && this.coalescable.test(event)) {
+                this.pending.pollLast();
+            }
+            this.pending.add(event);
+            if (this.scheduled) return;
+            this.scheduled = true;
+        }
+        this.executor.execute(this::deliver);
+    }
+
+    /**
+     * Delivers everything queued, including events posted while delivering
+     */
+    private void deliver() {
+        while (true) {
+            Event event;
+            synchronized (this) {
+                event = this.pending.poll();
+                if (event == null) {
+                    this.scheduled = false;
+                    return;
+                }
+            }
+            for (var observer : this.observers) {
+                observer.update(this.subject, event);
+            }
+        }
+    }
+}
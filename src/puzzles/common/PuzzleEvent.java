@@ -0,0 +1,123 @@
+package puzzles.common;
+import puzzles.common.solver.Configuration;
+
+/**
+ * Typed events a puzzle model sends to its observers
+ * State events carry the configuration to draw, so a view never has to read the model or parse text to find
+ * out what happened. Messages for the user are only built when a view asks for them.
+ * @param <C> the puzzle's configuration type
+ * @author Kilian Jakstis
+ */
+public sealed interface PuzzleEvent<C extends Configuration> {
+
+    /**
+     * @return a message describing the event for the user
+     */
+    String message();
+
+    /**
+     * @return the configuration to show after the event, or null if the event doesn't change what is shown
+     */
+    C config();
+
+    /**
+     * @return true if the event only replaces the shown state, so a newer state event can be delivered in its place
+     */
+    default boolean isStateUpdate() {
+        return false;
+    }
+
+    /**
+     * A puzzle file was loaded
+     * @param name the file's name
+     * @param config its starting configuration
+     */
+    record Loaded<C extends Configuration>(String name, C config) implements PuzzleEvent<C> {
+        public String message() {
+            return "Loaded: " + this.name;
+        }
+    }
+
+    /**
+     * The puzzle was reset to its starting configuration
+     * @param config the starting configuration
+     */
+    record Reset<C extends Configuration>(C config) implements PuzzleEvent<C> {
+        public String message() {
+            return "Puzzle reset";
+        }
+
+        public boolean isStateUpdate() {
+            return true;
+        }
+    }
+
+    /**
+     * A piece was selected as the first half of a move
+     * @param col column of the selection
+     * @param row row of the selection
+     * @param config the current configuration
+     */
+    record Selected<C extends Configuration>(int col, int row, C config) implements PuzzleEvent<C> {
+        public String message() {
+            return "Selected (" + this.col + ", " + this.row + ")";
+        }
+
+        public boolean isStateUpdate() {
+            return true;
+        }
+    }
+
+    /**
+     * The user made a legal move
+     * @param fromCol column the piece moved from
+     * @param fromRow row the piece moved from
+     * @param toCol column the piece moved to
+     * @param toRow row the piece moved to
+     * @param config the configuration after the move
+     */
+    record Moved<C extends Configuration>(int fromCol, int fromRow, int toCol, int toRow, C config)
+            implements PuzzleEvent<C> {
+        public String message() {
+            return "Moved from (" + this.fromCol + ", " + this.fromRow + ") to (" + this.toCol + ", " + this.toRow + ").";
+        }
+
+        public boolean isStateUpdate() {
+            return true;
+        }
+    }
+
+    /**
+     * The solver made the next move toward a solution
+     * @param config the configuration after the move
+     */
+    record Hint<C extends Configuration>(C config) implements PuzzleEvent<C> {
+        public String message() {
+            return "Next step";
+        }
+
+        public boolean isStateUpdate() {
+            return true;
+        }
+    }
+
+    /**
+     * The puzzle is solved
+     * @param config the solved configuration
+     */
+    record Solved<C extends Configuration>(C config) implements PuzzleEvent<C> {
+        public String message() {
+            return "Solved!";
+        }
+    }
+
+    /**
+     * Something the user asked for couldn't be done; nothing changed
+     * @param message what went wrong
+     */
+    record Error<C extends Configuration>(String message) implements PuzzleEvent<C> {
+        public C config() {
+            return null;
+        }
+    }
+}
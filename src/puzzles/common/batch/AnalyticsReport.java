@@ -0,0 +1,78 @@
+package puzzles.common.batch;
+import puzzles.common.solver.PuzzleAnalytics;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Batch runner for PuzzleAnalytics
+ * Analyzes every puzzle file in a directory and writes a JSON report
+ * Usage: java puzzles.common.batch.AnalyticsReport directory report.json
+ * @author Kilian Jakstis
+ */
+public class AnalyticsReport {
+
+    /**
+     * Runs the analytics over a directory of puzzle files
+     * @param args the puzzle directory and the report file
+     * @throws IOException if the report can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java AnalyticsReport directory report.json");
+            return;
+        }
+        File[] files = new File(args[0]).listFiles(File::isFile);
+        if (files == null) {
+            System.out.println("Not a directory: " + args[0]);
+            return;
+        }
+        Arrays.sort(files);
+        try (PrintWriter out = new PrintWriter(args[1])) {
+            out.println("[");
+            for (int i = 0; i < files.length; i++) {
+                File f = files[i];
+                long start = System.nanoTime();
+                PuzzleAnalytics a = PuzzleAnalytics.analyze(PuzzleFiles.load(f.getPath()));
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                out.printf(Locale.ROOT, "  {\"file\": \"%s\", \"puzzle\": \"%s\", \"optimalLength\": %d, " +
+                                "\"optimalSolutions\": %d, \"reachableStates\": %d, \"branchingFactor\": %.4f, " +
+                                "\"deadEnds\": %d, \"millis\": %d}%s%n",
+                        json(f.getName()), PuzzleFiles.isJamFile(f.getPath()) ? "jam" : "hoppers",
+                        a.getOptimalLength(), a.getOptimalSolutions(), a.getReachable(), a.getBranchingFactor(),
+                        a.getDeadEnds(), millis, i == files.length - 1 ? "" : ",");
+                System.out.println("Analyzed " + f.getName());
+            }
+            out.println("]");
+        }
+    }
+
+    /**
+     * Escapes a string for use between quotes in JSON
+     * @param s the string
+     * @return s with quotes, backslashes and control characters escaped
+     */
+    private static String json(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Configuration;
+import puzzles.hoppers.model.HoppersConfig;
+import puzzles.jam.model.JamConfig;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * One-line-per-puzzle bulk format for large puzzle databases
+ * Every record is a type letter, the row and col counts and then the board cells in row-major order:
+ *   J 6 6 AA...BC....BCXX..BC........DDD......   (Traffic Jam, '.' is empty, letters are cars)
+ *   H 3 5 R*G*.*G*G*..*..                          (Hoppers, using the usual '.', '*', 'G' and 'R' cells)
+ * Blank lines and lines starting with '#' are ignored.
+ * @author Kilian Jakstis
+ */
+public class BulkPuzzleFormat {
+    public static final byte JAM = 'J'; // record type for Traffic Jam puzzles
+    public static final byte HOPPERS = 'H'; // record type for Hoppers puzzles
+    public static final byte COMMENT = '#'; // starts a comment line
+
+    /**
+     * Utility class, no instances
+     */
+    private BulkPuzzleFormat() {
+    }
+
+    /**
+     * Writes a configuration as a single bulk record (without the line break)
+     * @param config a JamConfig or HoppersConfig
+     * @return the record
+     */
+    public static String toLine(Configuration config) {
+        char type;
+        int rows;
+        int cols;
+        char[][] board;
+        if (config instanceof JamConfig j) {
+            type = (char) JAM;
+            rows = j.getRows();
+            cols = j.getCols();
+            board = j.boardChars;
+        } else if (config instanceof HoppersConfig h) {
+            type = (char) HOPPERS;
+            rows = h.rows;
+            cols = h.cols;
+            board = h.board;
+        } else {
+            throw new IllegalArgumentException("Unsupported configuration: " + config.getClass().getName());
+        }
+        StringBuilder sb = new StringBuilder(8 + rows * cols);
+        sb.append(type).append(' ').append(rows).append(' ').append(cols).append(' ');
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                sb.append(board[x][y]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Converts every puzzle file in a directory into one bulk file
+     * Usage: java puzzles.common.batch.BulkPuzzleFormat directory output.txt
+     * @param args the puzzle directory and the bulk file to write
+     * @throws IOException if a file can't be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java BulkPuzzleFormat directory output.txt");
+            return;
+        }
+        File[] files = new File(args[0]).listFiles(File::isFile);
+        if (files == null) {
+            System.out.println("Not a directory: " + args[0]);
+            return;
+        }
+        Arrays.sort(files);
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(args[1]))) {
+            for (File f : files) {
+                out.write(toLine(PuzzleFiles.load(f.getPath())));
+                out.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.SolutionCache;
+import puzzles.hoppers.model.HoppersConfig;
+import puzzles.jam.model.JamConfig;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Memory-mapped reader for the bulk puzzle format (see BulkPuzzleFormat)
+ * The file is mapped in regions and cut into chunks on line boundaries. Chunks are parsed in parallel straight
+ * from the mapped bytes, so no Strings or regexes are involved; the only allocations are the boards themselves.
+ * @author Kilian Jakstis
+ */
+public class BulkPuzzleReader implements AutoCloseable {
+    private static final long REGION_SIZE = 1L << 30; // largest single mapping
+    private static final int CHUNK_SIZE = 1 << 20; // approximate bytes per parallel chunk
+    private final FileChannel channel; // the open bulk file
+    private final List<ByteBuffer> chunks = new ArrayList<>(); // line aligned slices of the mapped file
+
+    /**
+     * Opens and maps a bulk puzzle file
+     * @param file the bulk file
+     * @throws IOException if the file can't be opened or mapped
+     */
+    public BulkPuzzleReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        long size = this.channel.size();
+        long pos = 0;
+        while (pos < size) {
+            long length = Math.min(REGION_SIZE, size - pos);
+            MappedByteBuffer region = this.channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+            int end = (int) length;
+            if (pos + length < size) {
+                // only map whole lines; the rest goes in the next region
+                end = lastLineEnd(region, end);
+                if (end == 0) throw new IOException("Record longer than " + REGION_SIZE + " bytes at " + pos);
+            }
+            this.split(region, end);
+            pos += end;
+        }
+    }
+
+    /**
+     * Cuts a mapped region into chunks that each end on a line boundary
+     * @param region the mapped region
+     * @param end number of bytes of the region that hold whole lines
+     */
+    private void split(ByteBuffer region, int end) {
+        int start = 0;
+        while (start < end) {
+            int stop = Math.min(start + CHUNK_SIZE, end);
+            if (stop < end) {
+                while (stop < end && region.get(stop - 1) != '\n') stop++;
+            }
+            this.chunks.add(region.slice(start, stop - start));
+            start = stop;
+        }
+    }
+
+    /**
+     * @return index just past the last line break before limit, or 0 if there is none
+     */
+    private static int lastLineEnd(ByteBuffer buf, int limit) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (buf.get(i) == '\n') return i + 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Streams every puzzle in the file; the stream is parallel with one task per chunk
+     * @return the configurations
+     */
+    public Stream<Configuration> stream() {
+        return IntStream.range(0, this.chunks.size()).parallel().boxed().flatMap(chunk -> {
+            List<Configuration> parsed = new ArrayList<>();
+            this.parse(chunk, parsed::add);
+            return parsed.stream();
+        });
+    }
+
+    /**
+     * Hands every puzzle in the file to the action, parsing chunks in parallel
+     * The action is called from several threads at once
+     * @param action what to do with each configuration
+     */
+    public void forEach(Consumer<? super Configuration> action) {
+        IntStream.range(0, this.chunks.size()).parallel().forEach(chunk -> this.parse(chunk, action));
+    }
+
+    /**
+     * Parses all the records in one chunk
+     * @param chunk index of the chunk
+     * @param action receives each configuration
+     * @throws IllegalArgumentException for a malformed record, giving its line in the file
+     */
+    private void parse(int chunk, Consumer<? super Configuration> action) {
+        ByteBuffer buf = this.chunks.get(chunk);
+        int limit = buf.limit();
+        int p = 0;
+        while (p < limit) {
+            byte type = buf.get(p);
+            if (type == '\n' || type == '\r' || type == BulkPuzzleFormat.COMMENT) {
+                // blank line or comment
+                while (p < limit && buf.get(p) != '\n') p++;
+                p++;
+                continue;
+            }
+            int start = p++;
+            int rows = 0;
+            int cols = 0;
+            int cells = 0;
+            try {
+                p = skipSpaces(buf, p, limit);
+                while (p < limit && isDigit(buf.get(p))) {
+                    rows = Math.addExact(Math.multiplyExact(rows, 10), buf.get(p++) - '0');
+                }
+                p = skipSpaces(buf, p, limit);
+                while (p < limit && isDigit(buf.get(p))) {
+                    cols = Math.addExact(Math.multiplyExact(cols, 10), buf.get(p++) - '0');
+                }
+                p = skipSpaces(buf, p, limit);
+                cells = Math.multiplyExact(rows, cols);
+            } catch (ArithmeticException e) {
+                throw this.badRecord(chunk, start, "board size too large");
+            }
+            if (cells == 0 || cells > limit - p) {
+                throw this.badRecord(chunk, start, "board size doesn't match its cells");
+            }
+            char[][] board = new char[cols][rows];
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < cols; x++) {
+                    byte cell = buf.get(p++);
+                    // a short record must not run on into the next line
+                    if (cell == '\n' || cell == '\r') {
+                        throw this.badRecord(chunk, start, "fewer cells than rows * cols");
+                    }
+                    board[x][y] = (char) cell;
+                }
+            }
+            // a long record must not lose its tail
+            while (p < limit && buf.get(p) == '\r') p++;
+            if (p < limit && buf.get(p) != '\n') {
+                throw this.badRecord(chunk, start, "more cells than rows * cols");
+            }
+            p++;
+            if (type != BulkPuzzleFormat.JAM && type != BulkPuzzleFormat.HOPPERS) {
+                throw this.badRecord(chunk, start, "unknown record type '" + (char) type + "'");
+            }
+            Configuration config;
+            try {
+                config = type == BulkPuzzleFormat.JAM ? new JamConfig(board, cols, rows)
+                        : new HoppersConfig(board, rows, cols);
+            } catch (IllegalArgumentException e) {
+                throw this.badRecord(chunk, start, e.getMessage());
+            }
+            action.accept(config);
+        }
+    }
+
+    /**
+     * Makes the error for a malformed record; lines are only counted here, so good files never pay for it
+     * @param chunk index of the chunk holding the record
+     * @param offset where the record starts in the chunk
+     * @param problem what is wrong with it
+     * @return the exception to throw
+     */
+    private IllegalArgumentException badRecord(int chunk, int offset, String problem) {
+        long line = 1;
+        for (int c = 0; c <= chunk; c++) {
+            ByteBuffer buf = this.chunks.get(c);
+            int end = c == chunk ? offset : buf.limit();
+            for (int i = 0; i < end; i++) {
+                if (buf.get(i) == '\n') line++;
+            }
+        }
+        return new IllegalArgumentException("Bad bulk record on line " + line + ": " + problem);
+    }
+
+    /**
+     * @return the first index at or after p that isn't a space
+     */
+    private static int skipSpaces(ByteBuffer buf, int p, int limit) {
+        while (p < limit && buf.get(p) == ' ') p++;
+        return p;
+    }
+
+    /**
+     * @return is b an ASCII digit?
+     */
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Closes the file; the chunks stay readable until they are garbage collected
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Parses (and optionally solves) a bulk file and reports the throughput
+     * Usage: java puzzles.common.batch.BulkPuzzleReader bulkfile [solve]
+     * @param args the bulk file, and "solve" to also solve every puzzle
+     * @throws IOException if the file can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java BulkPuzzleReader bulkfile [solve]");
+            return;
+        }
+        boolean solve = args.length > 1 && args[1].equals("solve");
+        LongAdder puzzles = new LongAdder();
+        LongAdder solved = new LongAdder();
+        SolutionCache cache = new SolutionCache();
+        long start = System.nanoTime();
+        try (BulkPuzzleReader reader = new BulkPuzzleReader(Path.of(args[0]))) {
+            reader.forEach(config -> {
+                puzzles.increment();
+                if (solve && cache.solve(config, PuzzleFiles::solve) != null) {
+                    solved.increment();
+                }
+            });
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Puzzles: %d in %.3f s (%.0f puzzles/sec)%n", puzzles.sum(), seconds, puzzles.sum() / seconds);
+        if (solve) {
+            System.out.println("Solved: " + solved.sum() + " (" + cache.getHits() + " duplicates not re-solved)");
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.SearchResult;
+import puzzles.common.solver.Solution;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * The Solver's BFS, checkpointed to disk so a search that runs for hours survives a restart
+ * Configurations are numbered in the order they are discovered, so the BFS queue is just the numbers from the
+ * next one to expand to the last one found, and the whole search is that list, each entry's parent number, the
+ * queue head and the counters. Entries never change once found, so a checkpoint only appends the entries found
+ * since the last one to a log, then atomically replaces a small header that says how much of the log is valid.
+ * A crash mid-checkpoint leaves the old header and a log tail that resuming cuts off. The cost of a checkpoint is
+ * the states found since the last, written sequentially; the interval only decides how much work a crash loses.
+ * A resumed search expands the same configurations in the same order as an uninterrupted one, so it finds the
+ * same solution with the same counts.
+ * @author Kilian Jakstis
+ */
+public class CheckpointSolver {
+
+    /**
+     * Checkpoint interval unless given, one minute
+     */
+    public static final long DEFAULT_INTERVAL = 60_000;
+
+    private static final int MAGIC = 0x505A434B; // "PZCK"
+    private static final short VERSION = 1; // current format version
+    private static final int HEADER_SIZE = 4 + 2 + 1 + 4 + 4 + 8 + 8 + 8; // magic ... log length
+    private static final int BUFFER_SIZE = 1 << 20; // bytes buffered between channel writes and reads
+    private static final int CHECK_EVERY = 1024; // expansions between clock checks
+    private static final String LOG = "states.log"; // entries: ushort length, packed state, int parent
+    private static final String HEADER = "header"; // magic, version, type, head, count, unique, total, log length
+
+    private final Path dir; // where the checkpoint lives
+    private final long interval; // milliseconds between checkpoints
+
+    // the search, rebuilt from the checkpoint on resume
+    private byte type; // record type of the puzzle (see PuzzleArchive)
+    private final List<Configuration> configs = new ArrayList<>(); // every configuration found, in BFS order
+    private int[] parents = new int[1024]; // number of each configuration's parent, -1 for the start
+    private final Map<Configuration, Integer> numbers = new HashMap<>(); // configuration -> its number
+    private int head; // number of the next configuration to expand
+    private long unique; // counted as Solver counts them
+    private long total;
+
+    // the checkpoint
+    private int written; // configurations already in the log
+    private long logLength; // valid bytes of the log
+    private int checkpoints = 0; // checkpoints written by this run
+    private long checkpointNanos = 0; // time they took
+    private int resumedAt = -1; // configurations found when this run resumed, -1 if it started fresh
+
+    /**
+     * Makes a solver that checkpoints every minute
+     * @param dir directory for the checkpoint, created if needed
+     */
+    public CheckpointSolver(Path dir) {
+        this(dir, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Makes a solver
+     * @param dir directory for the checkpoint, created if needed
+     * @param interval milliseconds between checkpoints
+     */
+    public CheckpointSolver(Path dir, long interval) {
+        this.dir = dir;
+        this.interval = interval;
+    }
+
+    /**
+     * Finds the shortest solution, resuming the checkpoint in the directory if there is one for this puzzle
+     * The checkpoint is deleted once the search ends
+     * @param start config
+     * @return the result, the same as Solver.search(start) without a store gives
+     * @throws IllegalArgumentException if the directory holds a checkpoint of another puzzle
+     * @throws UncheckedIOException if the checkpoint can't be read or written
+     * @throws CancellationException if the thread is interrupted; the search is checkpointed first
+     */
+    public SearchResult search(Configuration start) {
+        long begin = System.nanoTime();
+        this.configs.clear();
+        this.numbers.clear();
+        this.checkpoints = 0;
+        this.checkpointNanos = 0;
+        this.resumedAt = -1;
+        try {
+            Files.createDirectories(this.dir);
+            if (Files.exists(this.dir.resolve(HEADER))) {
+                this.load();
+                if (!Arrays.equals(this.configs.get(0).encode(), start.encode())) {
+                    throw new IllegalArgumentException("The checkpoint in " + this.dir + " is for another puzzle");
+                }
+                this.resumedAt = this.configs.size();
+            } else {
+                this.begin(start);
+            }
+            int end = this.run();
+            this.delete();
+            if (end < 0) {
+                return new SearchResult(SearchResult.Status.UNSOLVABLE, null, this.unique, this.total,
+                        System.nanoTime() - begin);
+            }
+            int depth = 0;
+            for (int n = end; this.parents[n] >= 0; n = this.parents[n]) depth++;
+            int[] moves = new int[depth];
+            for (int i = depth - 1, n = end; i >= 0; i--, n = this.parents[n]) {
+                moves[i] = this.configs.get(this.parents[n]).moveTo(this.configs.get(n));
+            }
+            return new SearchResult(SearchResult.Status.SOLVED, new Solution(start, moves), this.unique, this.total,
+                    System.nanoTime() - begin);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Checkpoint failed in " + this.dir, e);
+        }
+    }
+
+    /**
+     * Starts a fresh search and its checkpoint
+     * @param start config
+     */
+    private void begin(Configuration start) throws IOException {
+        this.type = PuzzleArchive.typeOf(start);
+        this.add(start, -1);
+        this.head = 0;
+        this.unique = 0;
+        this.total = 0;
+        this.written = 0;
+        this.logLength = 0;
+        Files.deleteIfExists(this.dir.resolve(LOG));
+        if (start.isSolution()) {
+            this.unique++;
+            this.total++;
+        }
+    }
+
+    /**
+     * The BFS, from wherever the search stands, checkpointing on the interval
+     * @return number of the solved configuration reached first, or -1 if there is none
+     */
+    private int run() throws IOException {
+        if (this.configs.get(0).isSolution()) return 0;
+        long next = System.nanoTime() + this.interval * 1_000_000;
+        int expanded = 0;
+        while (this.head < this.configs.size() && !this.configs.get(this.head).isSolution()) {
+            if (++expanded % CHECK_EVERY == 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    this.checkpoint();
+                    throw new CancellationException("search interrupted");
+                }
+                if (System.nanoTime() - next >= 0) {
+                    this.checkpoint();
+                    next = System.nanoTime() + this.interval * 1_000_000;
+                }
+            }
+            int parent = this.head++;
+            for (Configuration config : this.configs.get(parent).getNeighbors()) {
+                this.total++;
+                if (!this.numbers.containsKey(config)) {
+                    this.add(config, parent);
+                    this.unique++;
+                }
+            }
+        }
+        if (this.head == this.configs.size()) return -1;
+        this.total++;
+        return this.head;
+    }
+
+    /**
+     * Numbers a newly found configuration
+     */
+    private void add(Configuration config, int parent) {
+        int n = this.configs.size();
+        if (n == this.parents.length) this.parents = Arrays.copyOf(this.parents, n * 2);
+        this.parents[n] = parent;
+        this.configs.add(config);
+        this.numbers.put(config, n);
+    }
+
+    /**
+     * Appends the configurations found since the last checkpoint to the log, then swaps in a header that covers
+     * them. Until the swap the old header still describes a complete earlier state.
+     */
+    private void checkpoint() throws IOException {
+        long begin = System.nanoTime();
+        try (FileChannel log = FileChannel.open(this.dir.resolve(LOG), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            // drop whatever a failed checkpoint left past the valid part
+            log.truncate(this.logLength);
+            log.position(this.logLength);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            for (int n = this.written; n < this.configs.size(); n++) {
+                byte[] state = this.configs.get(n).encode();
+                if (buffer.remaining() < 6 + state.length) this.drain(buffer, log);
+                buffer.putShort((short) state.length);
+                buffer.put(state);
+                buffer.putInt(this.parents[n]);
+            }
+            this.drain(buffer, log);
+            log.force(false);
+            this.logLength = log.position();
+        }
+        this.written = this.configs.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).put(this.type).putInt(this.head).putInt(this.written)
+                .putLong(this.unique).putLong(this.total).putLong(this.logLength);
+        Path tmp = this.dir.resolve(HEADER + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(header.flip());
+            out.force(false);
+        }
+        Files.move(tmp, this.dir.resolve(HEADER), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        this.checkpoints++;
+        this.checkpointNanos += System.nanoTime() - begin;
+    }
+
+    /**
+     * Writes out and clears a buffer
+     */
+    private void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Rebuilds the search from the checkpoint
+     */
+    private void load() throws IOException {
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(this.dir.resolve(HEADER)));
+        if (header.remaining() != HEADER_SIZE || header.getInt() != MAGIC || header.getShort() != VERSION) {
+            throw new IOException("Not a checkpoint header: " + this.dir.resolve(HEADER));
+        }
+        this.type = header.get();
+        this.head = header.getInt();
+        int count = header.getInt();
+        this.unique = header.getLong();
+        this.total = header.getLong();
+        this.logLength = header.getLong();
+        try (FileChannel log = FileChannel.open(this.dir.resolve(LOG), StandardOpenOption.READ)) {
+            if (log.size() < this.logLength) throw new IOException("Checkpoint log is shorter than its header says");
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            long left = this.logLength;
+            buffer.limit(0);
+            for (int n = 0; n < count; n++) {
+                if (buffer.remaining() < 2) left = this.refill(buffer, log, left);
+                int length = buffer.getShort() & 0xFFFF;
+                if (buffer.remaining() < length + 4) left = this.refill(buffer, log, left);
+                byte[] state = new byte[length];
+                buffer.get(state);
+                this.add(PuzzleArchive.decode(this.type, state), buffer.getInt());
+            }
+        }
+        this.written = count;
+    }
+
+    /**
+     * Moves a buffer's unread bytes to its front and reads more behind them, up to the valid end of the log
+     * @return valid bytes left in the log afterwards
+     */
+    private long refill(ByteBuffer buffer, FileChannel log, long left) throws IOException {
+        buffer.compact();
+        if (buffer.remaining() > left) buffer.limit(buffer.position() + (int) left);
+        while (buffer.hasRemaining()) {
+            int read = log.read(buffer);
+            if (read < 0) throw new IOException("Checkpoint log ended early");
+            left -= read;
+        }
+        buffer.flip();
+        return left;
+    }
+
+    /**
+     * Removes the checkpoint of a finished search
+     */
+    private void delete() throws IOException {
+        Files.deleteIfExists(this.dir.resolve(HEADER));
+        Files.deleteIfExists(this.dir.resolve(LOG));
+    }
+
+    /**
+     * @return checkpoints written by the last search
+     */
+    public int getCheckpoints() {
+        return this.checkpoints;
+    }
+
+    /**
+     * @return time the last search spent writing checkpoints, in milliseconds
+     */
+    public double getCheckpointMillis() {
+        return this.checkpointNanos / 1e6;
+    }
+
+    /**
+     * @return configurations the last search started with from a checkpoint, or -1 if it started fresh
+     */
+    public int getResumedAt() {
+        return this.resumedAt;
+    }
+}
@@ -0,0 +1,637 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.Fingerprints;
+import puzzles.common.solver.Solution;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BFS spread over several JVM processes, each owning one hash partition of the state space
+ * A configuration belongs to the worker picked by its fingerprint. Workers expand their part of the current
+ * layer and stream every child, encoded, to its owner, which drops the ones it has seen and keeps the rest for
+ * the next layer. Each worker's visited table maps a fingerprint to its parent's fingerprint and the move from
+ * it, so memory and work both split n ways.
+ * A coordinator runs the layers in lockstep: it tells every worker to expand, and each one answers once it has
+ * sent an end marker to every peer and received one from each. The coordinator then knows how many states the
+ * layer added and whether anyone reached a goal. A path is rebuilt by asking owners for parents from the goal
+ * back to the start.
+ *
+ * Workers connect to the coordinator, which hands out ids and the peers' addresses; every ordered pair of
+ * workers then gets its own one-way connection, so no socket is ever read and written by two threads.
+ * local(n) starts the workers as child JVMs on this machine; on other hosts start them with
+ * java puzzles.common.batch.DistributedSolver worker host:port
+ * @author Kilian Jakstis
+ */
+public class DistributedSolver implements AutoCloseable {
+
+    /**
+     * Coordinator commands
+     */
+    private static final byte PEERS = 1;
+    private static final byte PUZZLE = 2;
+    private static final byte EXPAND = 3;
+    private static final byte PARENT = 4;
+    private static final byte STOP = 5;
+
+    /**
+     * Messages between workers
+     */
+    private static final byte STATE = 1;
+    private static final byte END = 2;
+
+    /**
+     * Stream buffer size; children are written through it, so they go out in batches this big
+     */
+    private static final int BUFFER = 1 << 16;
+
+    /**
+     * Seconds to wait for workers to connect, and for local ones to exit
+     */
+    private static final int TIMEOUT = 60;
+
+    /**
+     * Connections to the workers, by id
+     */
+    private final ServerSocketChannel server;
+    private final List<SocketChannel> channels = new ArrayList<>();
+    private final List<DataInputStream> ins = new ArrayList<>();
+    private final List<DataOutputStream> outs = new ArrayList<>();
+
+    /**
+     * Worker processes started by local(n), empty otherwise
+     */
+    private final List<Process> processes = new ArrayList<>();
+
+    /**
+     * Stats of the last search
+     */
+    private final List<Long> layers = new ArrayList<>();
+
+    /**
+     * Listens for workers on a port of every interface; call accept once they are started
+     * @param port the port, 0 for any free one
+     * @throws IOException if the port can't be bound
+     */
+    public DistributedSolver(int port) throws IOException {
+        this.server = ServerSocketChannel.open();
+        this.server.bind(new InetSocketAddress(port));
+    }
+
+    /**
+     * Starts workers as child JVMs of this one, on the same class or module path, and connects them
+     * @param workers number of worker processes
+     * @return the connected solver
+     * @throws IOException if the processes can't be started or don't connect
+     */
+    public static DistributedSolver local(int workers) throws IOException {
+        DistributedSolver solver = new DistributedSolver(0);
+        try {
+            String java = ProcessHandle.current().info().command()
+                    .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            String address = "127.0.0.1:" + ((InetSocketAddress) solver.server.getLocalAddress()).getPort();
+            List<String> command = new ArrayList<>(List.of(java));
+            String modules = System.getProperty("jdk.module.path");
+            if (modules != null && !modules.isEmpty()) {
+                command.addAll(List.of("-p", modules, "-m",
+                        DistributedSolver.class.getModule().getName() + "/" + DistributedSolver.class.getName()));
+            } else {
+                command.addAll(List.of("-cp", System.getProperty("java.class.path"), DistributedSolver.class.getName()));
+            }
+            command.addAll(List.of("worker", address));
+            for (int i = 0; i < workers; i++) {
+                solver.processes.add(new ProcessBuilder(command).inheritIO().start());
+            }
+            solver.accept(workers);
+            return solver;
+        } catch (IOException | RuntimeException e) {
+            solver.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the workers to connect, then tells each its id and where its peers listen
+     * @param workers number of workers to wait for
+     * @throws IOException if they don't all connect in time
+     */
+    public void accept(int workers) throws IOException {
+        List<String> hosts = new ArrayList<>();
+        List<Integer> ports = new ArrayList<>();
+        this.server.configureBlocking(false);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        while (this.channels.size() < workers) {
+            SocketChannel channel = this.server.accept();
+            if (channel == null) {
+                if (System.nanoTime() > deadline) throw new IOException("Only " + this.channels.size() + " of "
+                        + workers + " workers connected");
+                sleep();
+                continue;
+            }
+            channel.configureBlocking(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            this.channels.add(channel);
+            this.ins.add(in);
+            this.outs.add(out);
+            // workers advertise the address they reached us from
+            hosts.add(in.readUTF());
+            ports.add(in.readInt());
+        }
+        for (int id = 0; id < workers; id++) {
+            DataOutputStream out = this.outs.get(id);
+            out.writeByte(PEERS);
+            out.writeInt(id);
+            out.writeInt(workers);
+            for (int j = 0; j < workers; j++) {
+                out.writeUTF(hosts.get(j));
+                out.writeInt(ports.get(j));
+            }
+            out.flush();
+        }
+        for (DataInputStream in : this.ins) {
+            in.readBoolean();
+        }
+    }
+
+    /**
+     * Finds the shortest solution
+     * @param start config
+     * @return the Solution, or null if there is none
+     * @throws IOException if a worker fails
+     */
+    public Solution solve(Configuration start) throws IOException {
+        if (start.isSolution()) {
+            this.layers.clear();
+            this.layers.add(1L);
+            return new Solution(start, new int[0]);
+        }
+        long goal = this.search(start, true);
+        if (goal == 0) return null;
+        // walk the parents back from the goal
+        List<Integer> moves = new ArrayList<>();
+        for (long at = goal; ; ) {
+            DataOutputStream out = this.outs.get(owner(at, this.outs.size()));
+            out.writeByte(PARENT);
+            out.writeLong(at);
+            out.flush();
+            DataInputStream in = this.ins.get(owner(at, this.outs.size()));
+            long parent = in.readLong();
+            int move = in.readInt();
+            if (parent == 0) break;
+            moves.add(move);
+            at = parent;
+        }
+        int[] path = new int[moves.size()];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = moves.get(path.length - 1 - i);
+        }
+        return new Solution(start, path);
+    }
+
+    /**
+     * Counts every configuration reachable from start, without stopping at solutions
+     * @param start config
+     * @return number of configurations
+     * @throws IOException if a worker fails
+     */
+    public long explore(Configuration start) throws IOException {
+        this.search(start, false);
+        return this.getUniqueConfigs();
+    }
+
+    /**
+     * Runs the layers until a goal is reached or nothing new is
+     * @param start config
+     * @param stop stop at the first layer with a goal
+     * @return the key of a goal reached, or 0 if none was (or stop is false)
+     * @throws IOException if a worker fails
+     */
+    private long search(Configuration start, boolean stop) throws IOException {
+        this.layers.clear();
+        this.layers.add(1L);
+        byte[] packed = start.encode();
+        for (DataOutputStream out : this.outs) {
+            out.writeByte(PUZZLE);
+            out.writeByte(PuzzleArchive.typeOf(start));
+            out.writeInt(packed.length);
+            out.write(packed);
+            out.flush();
+        }
+        for (DataInputStream in : this.ins) {
+            in.readBoolean();
+        }
+        while (true) {
+            for (DataOutputStream out : this.outs) {
+                out.writeByte(EXPAND);
+                out.flush();
+            }
+            long added = 0;
+            long goal = 0;
+            for (DataInputStream in : this.ins) {
+                added += in.readLong();
+                long found = in.readLong();
+                if (goal == 0) goal = found;
+            }
+            if (added == 0) return 0;
+            this.layers.add(added);
+            if (stop && goal != 0) return goal;
+        }
+    }
+
+    /**
+     * @return number of unique configurations the last search reached
+     */
+    public long getUniqueConfigs() {
+        long total = 0;
+        for (long layer : this.layers) {
+            total += layer;
+        }
+        return total;
+    }
+
+    /**
+     * @return new configurations in each layer of the last search, starting with the start's
+     */
+    public List<Long> getLayers() {
+        return List.copyOf(this.layers);
+    }
+
+    /**
+     * @return number of workers
+     */
+    public int getWorkers() {
+        return this.outs.size();
+    }
+
+    /**
+     * Stops the workers and waits for local ones to exit
+     * @throws IOException if closing a connection fails
+     */
+    @Override
+    public void close() throws IOException {
+        for (DataOutputStream out : this.outs) {
+            try {
+                out.writeByte(STOP);
+                out.flush();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+        for (SocketChannel channel : this.channels) {
+            channel.close();
+        }
+        this.server.close();
+        for (Process process : this.processes) {
+            try {
+                if (!process.waitFor(TIMEOUT, TimeUnit.SECONDS)) process.destroyForcibly();
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return the worker owning a key
+     */
+    private static int owner(long key, int workers) {
+        return (int) Long.remainderUnsigned(Fingerprints.mix(key), workers);
+    }
+
+    /**
+     * @return a fingerprint as a table key; 0 marks empty slots and "no parent"
+     */
+    private static long key(long print) {
+        return print == 0 ? 1 : print;
+    }
+
+    /**
+     * Backs off while polling
+     */
+    private static void sleep() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Open addressing map from a configuration's key to its parent's key and the move from the parent
+     */
+    private static final class Visited {
+        private long[] keys = new long[1 << 16];
+        private long[] parents = new long[this.keys.length];
+        private int[] moves = new int[this.keys.length];
+        private int size = 0;
+
+        /**
+         * Adds a configuration unless it is there
+         * @return true if it was new
+         */
+        private boolean add(long key, long parent, int move) {
+            if (this.size * 2 >= this.keys.length) this.grow();
+            int slot = this.find(key);
+            if (this.keys[slot] == key) return false;
+            this.keys[slot] = key;
+            this.parents[slot] = parent;
+            this.moves[slot] = move;
+            this.size++;
+            return true;
+        }
+
+        /**
+         * @return slot holding the key, or the empty slot where it would go
+         */
+        private int find(long key) {
+            int mask = this.keys.length - 1;
+            int slot = (int) key & mask;
+            while (this.keys[slot] != 0 && this.keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Doubles the table
+         */
+        private void grow() {
+            long[] keys = this.keys;
+            long[] parents = this.parents;
+            int[] moves = this.moves;
+            this.keys = new long[keys.length * 2];
+            this.parents = new long[this.keys.length];
+            this.moves = new int[this.keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == 0) continue;
+                int slot = this.find(keys[i]);
+                this.keys[slot] = keys[i];
+                this.parents[slot] = parents[i];
+                this.moves[slot] = moves[i];
+            }
+        }
+    }
+
+    /**
+     * One worker process: its partition's visited table and layers, and the connections to everyone else
+     */
+    private static final class Worker {
+        private int id;
+        private int workers;
+        private DataOutputStream[] peers; // one-way links to the other workers, null at our own id
+        private final Semaphore ends = new Semaphore(0); // end markers received this layer
+        private Visited visited = new Visited();
+        private List<byte[]> current = new ArrayList<>(); // encoded configurations to expand
+        private List<byte[]> next = new ArrayList<>(); // new configurations for the next layer
+        private long goal = 0; // key of a goal added to next, 0 if none
+        private byte type;
+
+        /**
+         * Joins a coordinator and serves it until told to stop
+         * @param host coordinator host
+         * @param port coordinator port
+         * @throws IOException if a connection fails
+         */
+        private void run(String host, int port) throws IOException {
+            ServerSocketChannel listener = ServerSocketChannel.open();
+            listener.bind(new InetSocketAddress(0));
+            try (listener; SocketChannel coordinator = SocketChannel.open(new InetSocketAddress(host, port))) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(coordinator)));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(coordinator)));
+                InetAddress self = ((InetSocketAddress) coordinator.getLocalAddress()).getAddress();
+                out.writeUTF(self.getHostAddress());
+                out.writeInt(((InetSocketAddress) listener.getLocalAddress()).getPort());
+                out.flush();
+                while (true) {
+                    byte command;
+                    try {
+                        command = in.readByte();
+                    } catch (EOFException e) {
+                        return;
+                    }
+                    switch (command) {
+                        case PEERS -> {
+                            this.connect(in, listener);
+                            out.writeBoolean(true);
+                        }
+                        case PUZZLE -> {
+                            this.reset(in);
+                            out.writeBoolean(true);
+                        }
+                        case EXPAND -> {
+                            this.expand();
+                            synchronized (this) {
+                                out.writeLong(this.next.size());
+                                out.writeLong(this.goal);
+                                // swap now, before any peer can start on the next layer
+                                this.current = this.next;
+                                this.next = new ArrayList<>();
+                                this.goal = 0;
+                            }
+                        }
+                        case PARENT -> {
+                            int slot = this.visited.find(in.readLong());
+                            out.writeLong(this.visited.parents[slot]);
+                            out.writeInt(this.visited.moves[slot]);
+                        }
+                        case STOP -> {
+                            return;
+                        }
+                        default -> throw new IOException("Unknown command " + command);
+                    }
+                    out.flush();
+                }
+            }
+        }
+
+        /**
+         * Opens a link to every peer and accepts one from each
+         * @param in the coordinator's message
+         * @param listener where peers connect
+         * @throws IOException if a connection fails
+         */
+        private void connect(DataInputStream in, ServerSocketChannel listener) throws IOException {
+            this.id = in.readInt();
+            this.workers = in.readInt();
+            this.peers = new DataOutputStream[this.workers];
+            for (int j = 0; j < this.workers; j++) {
+                String host = in.readUTF();
+                int port = in.readInt();
+                if (j == this.id) continue;
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+                this.peers[j] = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER));
+            }
+            for (int j = 1; j < this.workers; j++) {
+                SocketChannel channel = listener.accept();
+                DataInputStream from = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER));
+                Thread reader = new Thread(() -> this.listen(from), "peer-reader");
+                reader.setDaemon(true);
+                reader.start();
+            }
+        }
+
+        /**
+         * Reads children sent by one peer for as long as it stays connected
+         * @param from the peer's link
+         */
+        private void listen(DataInputStream from) {
+            try {
+                while (true) {
+                    if (from.readByte() == END) {
+                        this.ends.release();
+                        continue;
+                    }
+                    long key = from.readLong();
+                    long parent = from.readLong();
+                    int move = from.readInt();
+                    boolean solved = from.readBoolean();
+                    byte[] packed = new byte[from.readUnsignedShort()];
+                    from.readFully(packed);
+                    this.receive(key, parent, move, solved, packed);
+                }
+            } catch (IOException e) {
+                // the peer is gone; the coordinator ends the search
+            }
+        }
+
+        /**
+         * Starts a new search, the start's owner putting it in its first layer
+         * @param in the coordinator's message
+         * @throws IOException if reading fails
+         */
+        private void reset(DataInputStream in) throws IOException {
+            this.type = in.readByte();
+            byte[] packed = new byte[in.readInt()];
+            in.readFully(packed);
+            this.visited = new Visited();
+            this.current = new ArrayList<>();
+            this.next = new ArrayList<>();
+            this.goal = 0;
+            long key = key(PuzzleArchive.decode(this.type, packed).fingerprint());
+            if (owner(key, this.workers) == this.id) {
+                this.visited.add(key, 0, 0);
+                this.current.add(packed);
+            }
+        }
+
+        /**
+         * Expands this worker's part of the layer, then trades end markers with every peer
+         * @throws IOException if a link fails
+         */
+        private void expand() throws IOException {
+            List<byte[]> layer = this.current;
+            this.current = null;
+            for (byte[] packed : layer) {
+                Configuration config = PuzzleArchive.decode(this.type, packed);
+                long parent = key(config.fingerprint());
+                int[] moves = config.getMoves();
+                long[] prints = config.fingerprintsAfter(moves);
+                for (int i = 0; i < moves.length; i++) {
+                    long key = key(prints[i]);
+                    Configuration child = config.applyMove(moves[i]);
+                    int to = owner(key, this.workers);
+                    if (to == this.id) {
+                        this.receive(key, parent, moves[i], child.isSolution(), child.encode());
+                        continue;
+                    }
+                    byte[] encoded = child.encode();
+                    DataOutputStream out = this.peers[to];
+                    out.writeByte(STATE);
+                    out.writeLong(key);
+                    out.writeLong(parent);
+                    out.writeInt(moves[i]);
+                    out.writeBoolean(child.isSolution());
+                    out.writeShort(encoded.length);
+                    out.write(encoded);
+                }
+            }
+            for (DataOutputStream out : this.peers) {
+                if (out == null) continue;
+                out.writeByte(END);
+                out.flush();
+            }
+            this.ends.acquireUninterruptibly(this.workers - 1);
+        }
+
+        /**
+         * Keeps a child this worker owns if it is new
+         */
+        private synchronized void receive(long key, long parent, int move, boolean solved, byte[] packed) {
+            if (!this.visited.add(key, parent, move)) return;
+            this.next.add(packed);
+            if (solved && this.goal == 0) this.goal = key;
+        }
+    }
+
+    /**
+     * Usage:
+     *   java puzzles.common.batch.DistributedSolver local workers puzzle-file...   solve on child JVMs
+     *   java puzzles.common.batch.DistributedSolver serve port workers puzzle-file...  wait for workers, then solve
+     *   java puzzles.common.batch.DistributedSolver worker host:port               join a coordinator
+     * Puzzles are solved one after another on the same workers; directories are solved file by file
+     * @param args the mode and its arguments
+     * @throws IOException if a connection or file fails
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 2 && args[0].equals("worker")) {
+            int colon = args[1].lastIndexOf(':');
+            new Worker().run(args[1].substring(0, colon), Integer.parseInt(args[1].substring(colon + 1)));
+            return;
+        }
+        boolean local = args.length >= 3 && args[0].equals("local");
+        boolean serve = args.length >= 4 && args[0].equals("serve");
+        if (!local && !serve) {
+            System.out.println("Usage: java DistributedSolver local workers puzzle-file...");
+            System.out.println("       java DistributedSolver serve port workers puzzle-file...");
+            System.out.println("       java DistributedSolver worker host:port");
+            return;
+        }
+        List<String> files = new ArrayList<>();
+        for (String arg : Arrays.asList(args).subList(local ? 2 : 3, args.length)) {
+            File f = new File(arg);
+            if (f.isDirectory()) {
+                File[] children = f.listFiles(File::isFile);
+                Arrays.sort(children);
+                for (File child : children) {
+                    files.add(child.getPath());
+                }
+            } else {
+                files.add(arg);
+            }
+        }
+        DistributedSolver solver;
+        if (local) {
+            solver = local(Integer.parseInt(args[1]));
+        } else {
+            solver = new DistributedSolver(Integer.parseInt(args[1]));
+            System.out.println("Waiting for " + args[2] + " workers on port " + args[1]);
+            solver.accept(Integer.parseInt(args[2]));
+        }
+        try (solver) {
+            for (String file : files) {
+                long begin = System.nanoTime();
+                Solution solution = solver.solve(PuzzleFiles.load(file));
+                double seconds = (System.nanoTime() - begin) / 1e9;
+                System.out.printf("%s: %s, %d configs in %.3f s (%.0f configs/s on %d workers)%n", file,
+                        solution == null ? "no solution" : solution.getLength() + " moves", solver.getUniqueConfigs(),
+                        seconds, solver.getUniqueConfigs() / seconds, solver.getWorkers());
+            }
+        }
+    }
+}
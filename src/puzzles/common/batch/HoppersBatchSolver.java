@@ -0,0 +1,313 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Solution;
+import puzzles.common.solver.Solver;
+import puzzles.hoppers.model.HoppersConfig;
+import puzzles.hoppers.model.HoppersLayout;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * BFS for Hoppers on packed positions, a whole level at a time
+ * Positions are green and red frog masks over a HoppersLayout. Each level's jump legality masks and its
+ * children's hashes come out of LaneKernels in one call, so with the Vector API several positions are tested per
+ * instruction and no boards are copied. Every jump removes a green frog, so all positions in a level have the same
+ * number of greens and duplicates can only be within a level.
+ * Boards with more than 64 playable cells go to the ordinary Solver.
+ * @author Kilian Jakstis
+ */
+public class HoppersBatchSolver {
+
+    /**
+     * One BFS level: packed positions with the index of their parent in the previous level and the jump made
+     */
+    private static final class Level {
+        private long[] green;
+        private long[] red;
+        private int[] parent;
+        private int[] jump;
+        private int size = 0;
+
+        /**
+         * @param capacity positions to make room for
+         */
+        private Level(int capacity) {
+            this.green = new long[capacity];
+            this.red = new long[capacity];
+            this.parent = new int[capacity];
+            this.jump = new int[capacity];
+        }
+
+        /**
+         * Appends a position; capacity is always known up front
+         */
+        private void add(long green, long red, int parent, int jump) {
+            this.green[this.size] = green;
+            this.red[this.size] = red;
+            this.parent[this.size] = parent;
+            this.jump[this.size++] = jump;
+        }
+    }
+
+    /**
+     * Untimed rounds in the benchmark; the kernels only reach full speed once C2 has intrinsified them
+     */
+    private static final int KERNEL_WARMUPS = 30;
+    private static final int SOLVE_WARMUPS = 2;
+
+    /**
+     * The kernels in use
+     */
+    private final LaneKernels kernels;
+
+    /**
+     * Positions expanded by the last solve
+     */
+    private long expanded = 0;
+
+    /**
+     * Makes a solver with the Vector API kernels if the module is there, otherwise the scalar ones
+     */
+    public HoppersBatchSolver() {
+        this(LaneKernels.best());
+    }
+
+    /**
+     * Makes a solver with the given kernels
+     * @param kernels LaneKernels.scalar() or LaneKernels.best()
+     */
+    public HoppersBatchSolver(LaneKernels kernels) {
+        this.kernels = kernels;
+    }
+
+    /**
+     * Finds the shortest solution
+     * @param start config
+     * @return the Solution, or null if there is none
+     */
+    public Solution solve(HoppersConfig start) {
+        this.expanded = 0;
+        if (!HoppersLayout.fits(start)) {
+            return new Solver().solve(start);
+        }
+        HoppersLayout layout = new HoppersLayout(start);
+        List<Level> levels = new ArrayList<>();
+        Level level = new Level(1);
+        level.add(layout.pack(start, HoppersConfig.GREEN), layout.pack(start, HoppersConfig.RED), -1, -1);
+        while (level.size > 0) {
+            levels.add(level);
+            for (int i = 0; i < level.size; i++) {
+                if (level.green[i] == 0 && Long.bitCount(level.red[i]) == 1) {
+                    return this.path(start, layout, levels, i);
+                }
+            }
+            level = this.expand(layout, level);
+        }
+        return null;
+    }
+
+    /**
+     * Makes the next level: masks every legal jump, applies them, hashes the children and drops duplicates
+     * @param layout the board shape
+     * @param level the level to expand
+     * @return the next level
+     */
+    private Level expand(HoppersLayout layout, Level level) {
+        int n = level.size;
+        this.expanded += n;
+        int[] from = layout.getFrom();
+        int[] over = layout.getOver();
+        int[] to = layout.getTo();
+        int words = (to.length + 63) / 64;
+        long[] masks = new long[words * n];
+        this.kernels.jumps(level.green, level.red, n, from, over, to, masks);
+        int total = 0;
+        for (long mask : masks) {
+            total += Long.bitCount(mask);
+        }
+        Level children = new Level(total);
+        for (int i = 0; i < n; i++) {
+            long green = level.green[i];
+            long red = level.red[i];
+            for (int w = 0; w < words; w++) {
+                for (long mask = masks[w * n + i]; mask != 0; mask &= mask - 1) {
+                    int j = w * 64 + Long.numberOfTrailingZeros(mask);
+                    long moved = 1L << from[j] | 1L << to[j];
+                    long g = green & ~(1L << over[j]);
+                    long r = red;
+                    // the jumping frog keeps its color
+                    if ((green >>> from[j] & 1) != 0) {
+                        g ^= moved;
+                    } else {
+                        r ^= moved;
+                    }
+                    children.add(g, r, i, j);
+                }
+            }
+        }
+        return this.dedup(children);
+    }
+
+    /**
+     * Keeps the first copy of every position, using an open addressing table over the kernels' hashes
+     * @param children the generated positions
+     * @return the unique ones, in order
+     */
+    private Level dedup(Level children) {
+        int n = children.size;
+        long[] hashes = new long[n];
+        this.kernels.hash(children.green, children.red, n, hashes);
+        int[] table = new int[Integer.highestOneBit(Math.max(1, n) * 2 - 1) << 1];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        Level unique = new Level(n);
+        for (int i = 0; i < n; i++) {
+            long green = children.green[i];
+            long red = children.red[i];
+            int slot = (int) hashes[i] & mask;
+            while (table[slot] >= 0
+                    && (unique.green[table[slot]] != green || unique.red[table[slot]] != red)) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] < 0) {
+                table[slot] = unique.size;
+                unique.add(green, red, children.parent[i], children.jump[i]);
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Follows parent indices back through the levels
+     * @param start the start config
+     * @param layout the board shape
+     * @param levels every level so far
+     * @param index position of the solution in the last level
+     * @return the Solution
+     */
+    private Solution path(HoppersConfig start, HoppersLayout layout, List<Level> levels, int index) {
+        int[] moves = new int[levels.size() - 1];
+        for (int d = moves.length; d > 0; d--) {
+            Level level = levels.get(d);
+            moves[d - 1] = layout.move(level.jump[index]);
+            index = level.parent[index];
+        }
+        return new Solution(start, moves);
+    }
+
+    /**
+     * @return number of positions expanded by the last solve
+     */
+    public long getExpanded() {
+        return this.expanded;
+    }
+
+    /**
+     * @return the kernels in use
+     */
+    public LaneKernels getKernels() {
+        return this.kernels;
+    }
+
+    /**
+     * Benchmarks the kernels, then solves every Hoppers puzzle in a directory with Solver and with the batch solver
+     * on each kind of kernel, checking that the solution lengths agree
+     * Usage: java --add-modules jdk.incubator.vector puzzles.common.batch.HoppersBatchSolver directory [rounds]
+     * Without --add-modules only the scalar kernels run.
+     * @param args the directory and the number of timed rounds
+     * @throws IOException if a file can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java HoppersBatchSolver directory [rounds]");
+            return;
+        }
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        List<LaneKernels> kinds = new ArrayList<>(List.of(LaneKernels.scalar()));
+        if (LaneKernels.vectorAvailable()) {
+            kinds.add(LaneKernels.best());
+        } else {
+            System.out.println("Vector API not available, run with --add-modules " + LaneKernels.VECTOR_MODULE);
+        }
+        List<HoppersConfig> puzzles = new ArrayList<>();
+        File[] files = new File(args[0]).listFiles(File::isFile);
+        Arrays.sort(files);
+        for (File f : files) {
+            if (!PuzzleFiles.isJamFile(f.getPath())) puzzles.add(new HoppersConfig(f.getPath()));
+        }
+        HoppersConfig biggest = puzzles.get(0);
+        for (HoppersConfig p : puzzles) {
+            if (p.rows * p.cols > biggest.rows * biggest.cols && HoppersLayout.fits(p)) biggest = p;
+        }
+        benchmarkKernels(new HoppersLayout(biggest), kinds, rounds);
+        long[] reference = new long[puzzles.size()];
+        long nanos = time(SOLVE_WARMUPS, rounds, () -> {
+            for (int i = 0; i < puzzles.size(); i++) {
+                Solution s = new Solver().solve(puzzles.get(i));
+                reference[i] = s == null ? -1 : s.getLength();
+            }
+        });
+        System.out.printf("%-12s solve all: %8.3f ms%n", "Solver", nanos / 1e6);
+        for (LaneKernels kernels : kinds) {
+            HoppersBatchSolver solver = new HoppersBatchSolver(kernels);
+            nanos = time(SOLVE_WARMUPS, rounds, () -> {
+                for (int i = 0; i < puzzles.size(); i++) {
+                    Solution s = solver.solve(puzzles.get(i));
+                    if ((s == null ? -1 : s.getLength()) != reference[i]) {
+                        throw new IllegalStateException("solution length differs on puzzle " + i);
+                    }
+                }
+            });
+            System.out.printf("%-12s solve all: %8.3f ms%n", kernels.name(), nanos / 1e6);
+        }
+    }
+
+    /**
+     * Times the kernels alone on random positions of a layout
+     * @param layout the board shape
+     * @param kinds kernels to compare
+     * @param rounds timed rounds
+     */
+    private static void benchmarkKernels(HoppersLayout layout, List<LaneKernels> kinds, int rounds) {
+        int n = 1 << 16;
+        long[] green = new long[n];
+        long[] red = new long[n];
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < n; i++) {
+            green[i] = random.nextLong() & random.nextLong();
+            red[i] = 1L << random.nextInt(64) & ~green[i];
+        }
+        long[] masks = new long[(layout.getJumps() + 63) / 64 * n];
+        long[] hashes = new long[n];
+        for (LaneKernels kernels : kinds) {
+            long jumps = time(KERNEL_WARMUPS, rounds, () -> kernels.jumps(green, red, n, layout.getFrom(), layout.getOver(),
+                    layout.getTo(), masks));
+            long hash = time(KERNEL_WARMUPS, rounds, () -> kernels.hash(green, red, n, hashes));
+            System.out.printf("%-12s jumps: %6.2f ns/position, hash: %6.2f ns/position%n", kernels.name(),
+                    (double) jumps / n, (double) hash / n);
+        }
+    }
+
+    /**
+     * Runs a task for warm-up, then the given number of rounds
+     * @param warmups untimed rounds, enough for C2 to compile (and for the Vector API, intrinsify) the work
+     * @param rounds timed rounds
+     * @param task the work
+     * @return fastest round in nanoseconds
+     */
+    private static long time(int warmups, int rounds, Runnable task) {
+        for (int i = 0; i < warmups; i++) {
+            task.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,77 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Fingerprints;
+
+/**
+ * Batch kernels over lanes of packed positions, used by HoppersBatchSolver
+ * A position is a pair of longs (for Hoppers: the green and red frog masks of a HoppersLayout), and a lane is the
+ * same slot across two arrays. The vector implementation works on as many lanes at once as the CPU's widest
+ * registers hold through jdk.incubator.vector; the scalar one gives the same answers one lane at a time.
+ * @author Kilian Jakstis
+ */
+public interface LaneKernels {
+
+    /**
+     * Name of the incubator module with the Vector API
+     */
+    String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * 64 bit hash of every position: mix(a * SEED + b)
+     * @param a first long of each position
+     * @param b second long of each position
+     * @param count number of positions
+     * @param out receives the hashes
+     */
+    void hash(long[] a, long[] b, int count, long[] out);
+
+    /**
+     * Jump legality masks: bit j of a position's mask is set if a frog (green or red) sits on from[j], a green frog
+     * on over[j] and to[j] is empty. Masks take (jumps + 63) / 64 words, stored word-major so that word w of
+     * position i is out[w * count + i].
+     * @param green green frog masks
+     * @param red red frog masks
+     * @param count number of positions
+     * @param from cell each jump starts from
+     * @param over cell each jump passes over
+     * @param to cell each jump lands on
+     * @param out receives the masks
+     */
+    void jumps(long[] green, long[] red, int count, int[] from, int[] over, int[] to, long[] out);
+
+    /**
+     * @return short name for reports
+     */
+    String name();
+
+    /**
+     * @return the kernels that do one lane at a time
+     */
+    static LaneKernels scalar() {
+        return ScalarLaneKernels.INSTANCE;
+    }
+
+    /**
+     * @return true if the Vector API module was resolved at startup (--add-modules jdk.incubator.vector)
+     */
+    static boolean vectorAvailable() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+    }
+
+    /**
+     * The vector kernels are only loaded when the module is there, so the scalar path never touches its classes
+     * @return the vector kernels if available, else the scalar ones
+     */
+    static LaneKernels best() {
+        return vectorAvailable() ? VectorLaneKernels.INSTANCE : ScalarLaneKernels.INSTANCE;
+    }
+
+    /**
+     * Scalar hash of one position, the same function every implementation computes
+     * @param a first long
+     * @param b second long
+     * @return the hash
+     */
+    static long hash(long a, long b) {
+        return Fingerprints.mix(a * Fingerprints.SEED + b);
+    }
+}
@@ -0,0 +1,386 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Solution;
+import puzzles.hoppers.model.HoppersConfig;
+import puzzles.hoppers.model.HoppersLayout;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BFS for Hoppers that keeps finished levels as sorted arrays of positions, or spills them to disk
+ * Every jump removes a green frog, so a position can only repeat within its own level and duplicates are dropped
+ * by sorting each new level. A finished level keeps nothing but its positions: with the single red frog's cell as
+ * a bucket, that is one long (the green mask) per position, against the masks, parent index, jump number and
+ * hash table slot HoppersBatchSolver holds for every position of every level. With a spill directory finished
+ * levels go to files and are mapped back, so they live in the page cache instead of the heap.
+ * The path is rebuilt backwards from the goal: every jump that could have led to a position is undone and the
+ * result looked up in the level before by binary search.
+ * Boards with more than one red frog go to HoppersBatchSolver.
+ * @author Kilian Jakstis
+ */
+public class LayeredHoppersSolver {
+
+    /**
+     * Positions expanded per call to the kernels
+     */
+    private static final int CHUNK = 1 << 14;
+
+    /**
+     * Where finished levels are spilled, or null to keep them in memory
+     */
+    private final Path spill;
+
+    /**
+     * The kernels in use
+     */
+    private final LaneKernels kernels;
+
+    /**
+     * Stats of the last solve
+     */
+    private long expanded = 0;
+    private long widest = 0;
+    private long heapBytes = 0;
+    private long spilledBytes = 0;
+
+    /**
+     * Makes a solver that keeps finished levels in memory
+     */
+    public LayeredHoppersSolver() {
+        this(null);
+    }
+
+    /**
+     * Makes a solver
+     * @param spill directory to spill finished levels to, or null to keep them in memory
+     */
+    public LayeredHoppersSolver(Path spill) {
+        this.spill = spill;
+        this.kernels = LaneKernels.best();
+    }
+
+    /**
+     * Finds the shortest solution
+     * @param start config
+     * @return the Solution, or null if there is none
+     * @throws UncheckedIOException if spilling fails
+     */
+    public Solution solve(HoppersConfig start) {
+        this.expanded = 0;
+        this.widest = 0;
+        this.heapBytes = 0;
+        this.spilledBytes = 0;
+        if (!HoppersLayout.fits(start)) {
+            return new HoppersBatchSolver(this.kernels).solve(start);
+        }
+        HoppersLayout layout = new HoppersLayout(start);
+        long red = layout.pack(start, HoppersConfig.RED);
+        if (Long.bitCount(red) != 1) {
+            return new HoppersBatchSolver(this.kernels).solve(start);
+        }
+        int cells = layout.getCells().length;
+        List<LongBuffer> levels = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+        try {
+            long[] first = new long[cells + 2];
+            int redCell = Long.numberOfTrailingZeros(red);
+            Arrays.fill(first, 0, redCell + 1, cells + 1);
+            Arrays.fill(first, redCell + 1, cells + 1, cells + 2);
+            first[cells + 1] = layout.pack(start, HoppersConfig.GREEN);
+            LongBuffer level = LongBuffer.wrap(first);
+            while (true) {
+                int goal = goal(level, cells);
+                if (goal >= 0) {
+                    levels.add(level);
+                    return this.path(start, layout, levels, goal);
+                }
+                long[] next = this.expand(layout, level);
+                this.widest = Math.max(this.widest, next.length - cells - 1);
+                if (next.length == cells + 1) return null;
+                levels.add(this.finish(level, files));
+                level = LongBuffer.wrap(next);
+            }
+        } finally {
+            for (Path file : files) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    // it was a temp file anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * A level is a long[] of cells + 1 offsets, offset r being where the green masks of positions with the red
+     * frog on cell r start, followed by the masks, sorted within each cell
+     * @return the red cell of a solved position in the level, or -1 if it has none
+     */
+    private static int goal(LongBuffer level, int cells) {
+        for (int r = 0; r < cells; r++) {
+            if (contains(level, cells, r, 0)) return r;
+        }
+        return -1;
+    }
+
+    /**
+     * Positions generated from a level, as parallel arrays grown as needed, with a count per red cell
+     */
+    private static final class Children {
+        private long[] green = new long[CHUNK];
+        private byte[] red = new byte[CHUNK];
+        private int size = 0;
+        private final int[] counts;
+
+        /**
+         * @param cells playable cells of the board
+         */
+        private Children(int cells) {
+            this.counts = new int[cells];
+        }
+
+        /**
+         * Makes room for more positions
+         */
+        private void reserve(int more) {
+            if (this.size + more > this.green.length) {
+                this.green = Arrays.copyOf(this.green, Math.max(this.size + more, this.green.length * 2));
+                this.red = Arrays.copyOf(this.red, this.green.length);
+            }
+        }
+
+        /**
+         * Appends a position; room must have been reserved
+         */
+        private void add(long green, int redCell) {
+            this.green[this.size] = green;
+            this.red[this.size++] = (byte) redCell;
+            this.counts[redCell]++;
+        }
+    }
+
+    /**
+     * Generates every position one jump from a level, then sorts them into the next level without duplicates
+     * @param layout the board shape
+     * @param level the level to expand
+     * @return the next level
+     */
+    private long[] expand(HoppersLayout layout, LongBuffer level) {
+        int cells = layout.getCells().length;
+        long[] green = new long[CHUNK];
+        long[] red = new long[CHUNK];
+        long[] masks = new long[(layout.getJumps() + 63) / 64 * CHUNK];
+        Children children = new Children(cells);
+        int n = 0;
+        for (int r = 0; r < cells; r++) {
+            for (int i = (int) level.get(r), end = (int) level.get(r + 1); i < end; i++) {
+                green[n] = level.get(i);
+                red[n++] = 1L << r;
+                if (n == CHUNK) {
+                    this.generate(layout, green, red, n, masks, children);
+                    n = 0;
+                }
+            }
+        }
+        this.generate(layout, green, red, n, masks, children);
+        // bucket by red cell, then sort and drop duplicates within each bucket
+        long[] next = new long[cells + 1 + children.size];
+        int[] fill = new int[cells];
+        int at = cells + 1;
+        for (int r = 0; r < cells; r++) {
+            fill[r] = at;
+            at += children.counts[r];
+        }
+        for (int c = 0; c < children.size; c++) {
+            next[fill[children.red[c]]++] = children.green[c];
+        }
+        int write = cells + 1;
+        int read = cells + 1;
+        for (int r = 0; r < cells; r++) {
+            int end = read + children.counts[r];
+            Arrays.sort(next, read, end);
+            next[r] = write;
+            for (int i = read; i < end; i++) {
+                if (i == read || next[i] != next[i - 1]) next[write++] = next[i];
+            }
+            read = end;
+        }
+        next[cells] = write;
+        return write == next.length ? next : Arrays.copyOf(next, write);
+    }
+
+    /**
+     * Applies every legal jump to a chunk of positions
+     * @param layout the board shape
+     * @param green green masks of the chunk
+     * @param red red masks of the chunk
+     * @param n positions in the chunk
+     * @param masks room for the kernels' jump masks
+     * @param children where the new positions go
+     */
+    private void generate(HoppersLayout layout, long[] green, long[] red, int n, long[] masks, Children children) {
+        if (n == 0) return;
+        int[] from = layout.getFrom();
+        int[] over = layout.getOver();
+        int[] to = layout.getTo();
+        int words = (to.length + 63) / 64;
+        this.kernels.jumps(green, red, n, from, over, to, masks);
+        int total = 0;
+        for (int k = 0; k < words * n; k++) {
+            total += Long.bitCount(masks[k]);
+        }
+        children.reserve(total);
+        for (int p = 0; p < n; p++) {
+            int redCell = Long.numberOfTrailingZeros(red[p]);
+            for (int w = 0; w < words; w++) {
+                for (long mask = masks[w * n + p]; mask != 0; mask &= mask - 1) {
+                    int j = w * 64 + Long.numberOfTrailingZeros(mask);
+                    long g = green[p] & ~(1L << over[j]);
+                    // the jumping frog keeps its color
+                    if (from[j] == redCell) {
+                        children.add(g, to[j]);
+                    } else {
+                        children.add(g ^ (1L << from[j] | 1L << to[j]), redCell);
+                    }
+                }
+            }
+        }
+        this.expanded += n;
+    }
+
+    /**
+     * Puts a level that has been expanded away, in memory or in a spill file
+     * @param level the level
+     * @param files spill files made so far, deleted when the solve ends
+     * @return the level to keep for the path
+     */
+    private LongBuffer finish(LongBuffer level, List<Path> files) {
+        long bytes = (long) level.capacity() * Long.BYTES;
+        if (this.spill == null) {
+            this.heapBytes += bytes;
+            return level;
+        }
+        try {
+            Files.createDirectories(this.spill);
+            Path file = Files.createTempFile(this.spill, "hoppers-level", ".bin");
+            files.add(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(CHUNK * Long.BYTES).order(ByteOrder.nativeOrder());
+                for (int i = 0; i < level.capacity(); ) {
+                    buffer.clear();
+                    int n = Math.min(CHUNK, level.capacity() - i);
+                    buffer.asLongBuffer().put(level.array(), i, n);
+                    buffer.limit(n * Long.BYTES);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    i += n;
+                }
+                this.spilledBytes += bytes;
+                // the mapping outlives the channel
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes).order(ByteOrder.nativeOrder()).asLongBuffer();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't spill a level to " + this.spill, e);
+        }
+    }
+
+    /**
+     * Walks back from a solved position, undoing jumps and looking the positions up in the levels before
+     * @param start the start config
+     * @param layout the board shape
+     * @param levels every level, the last one holding the solution
+     * @param redCell the solved position's red cell
+     * @return the Solution
+     */
+    private Solution path(HoppersConfig start, HoppersLayout layout, List<LongBuffer> levels, int redCell) {
+        int cells = layout.getCells().length;
+        int[] from = layout.getFrom();
+        int[] over = layout.getOver();
+        int[] to = layout.getTo();
+        int[] moves = new int[levels.size() - 1];
+        long green = 0;
+        for (int d = moves.length; d > 0; d--) {
+            LongBuffer before = levels.get(d - 1);
+            long occupied = green | 1L << redCell;
+            boolean found = false;
+            for (int j = 0; j < to.length && !found; j++) {
+                if ((occupied >>> to[j] & 1) == 0 || (occupied >>> from[j] & 1) != 0
+                        || (occupied >>> over[j] & 1) != 0) continue;
+                long g = green | 1L << over[j];
+                int r = redCell;
+                if (to[j] == redCell) {
+                    r = from[j];
+                } else {
+                    g ^= 1L << from[j] | 1L << to[j];
+                }
+                if (contains(before, cells, r, g)) {
+                    moves[d - 1] = layout.move(j);
+                    green = g;
+                    redCell = r;
+                    found = true;
+                }
+            }
+            if (!found) throw new IllegalStateException("no parent in level " + (d - 1));
+        }
+        return new Solution(start, moves);
+    }
+
+    /**
+     * Binary search for a position in a level
+     * @return true if the level holds green frogs g with the red frog on cell r
+     */
+    private static boolean contains(LongBuffer level, int cells, int r, long g) {
+        int low = (int) level.get(r);
+        int high = (int) level.get(r + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = level.get(mid);
+            if (value < g) {
+                low = mid + 1;
+            } else if (value > g) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of positions expanded by the last solve
+     */
+    public long getExpanded() {
+        return this.expanded;
+    }
+
+    /**
+     * @return most positions in one level of the last solve
+     */
+    public long getWidest() {
+        return this.widest;
+    }
+
+    /**
+     * @return bytes of finished levels the last solve kept on the heap
+     */
+    public long getHeapBytes() {
+        return this.heapBytes;
+    }
+
+    /**
+     * @return bytes of finished levels the last solve spilled to disk
+     */
+    public long getSpilledBytes() {
+        return this.spilledBytes;
+    }
+}
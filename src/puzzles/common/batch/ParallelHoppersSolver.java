@@ -0,0 +1,275 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Solution;
+import puzzles.common.solver.Solver;
+import puzzles.hoppers.model.HoppersConfig;
+import puzzles.hoppers.model.HoppersLayout;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parallel depth first search for Hoppers on packed positions, on a work-stealing ForkJoinPool
+ * Every jump removes a green frog, so every solution has one jump per green and the first one found is a
+ * shortest one; the tree is as deep as there are greens. Near the root each jump's subtree is its own task, so
+ * idle workers steal the big subtrees; below the split depth a worker searches its subtree alone.
+ * Positions that are fully searched without a solution go in a dead set shared by all workers, so no subtree is
+ * searched twice once finished. The first worker to find a solution publishes it and every other task returns at
+ * its next position.
+ * Boards with more than 64 playable cells go to the ordinary Solver.
+ * @author Kilian Jakstis
+ */
+public class ParallelHoppersSolver {
+
+    /**
+     * Depths below the root whose subtrees become tasks unless given
+     */
+    public static final int DEFAULT_SPLIT_DEPTH = 4;
+
+    /**
+     * A position, as the dead set's key
+     */
+    private record State(long green, long red) {
+    }
+
+    /**
+     * One search: the board, what is shared between its tasks, and its counts
+     */
+    private static final class Search {
+        private final HoppersLayout layout;
+        private final int split; // tasks are made for positions shallower than this
+        private final Set<State> dead = ConcurrentHashMap.newKeySet(); // fully searched, no solution below
+        private final AtomicReference<int[]> found = new AtomicReference<>(); // jumps of the first solution
+        private final LongAdder expanded = new LongAdder(); // positions expanded
+        private final LongAdder tasks = new LongAdder(); // tasks made
+
+        /**
+         * @param layout the board shape
+         * @param split the split depth
+         */
+        private Search(HoppersLayout layout, int split) {
+            this.layout = layout;
+            this.split = split;
+        }
+    }
+
+    /**
+     * Searches the subtree under one position; forks a task per jump near the root, otherwise searches alone
+     */
+    @SuppressWarnings("serial") // never serialized
+    private static final class Subtree extends RecursiveAction {
+        private final Search search;
+        private final long green;
+        private final long red;
+        private final int[] path; // jumps from the root to here
+
+        /**
+         * @param search the search this is part of
+         * @param green green frog mask
+         * @param red red frog mask
+         * @param path jumps that led here
+         */
+        private Subtree(Search search, long green, long red, int[] path) {
+            this.search = search;
+            this.green = green;
+            this.red = red;
+            this.path = path;
+            search.tasks.increment();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void compute() {
+            Search s = this.search;
+            if (s.found.get() != null) return;
+            if (this.path.length >= s.split) {
+                int[] stack = Arrays.copyOf(this.path, this.path.length + Long.bitCount(this.green));
+                dfs(s, this.green, this.red, stack, this.path.length);
+                return;
+            }
+            if (this.green == 0) {
+                if (Long.bitCount(this.red) == 1) s.found.compareAndSet(null, this.path);
+                return;
+            }
+            if (s.dead.contains(new State(this.green, this.red))) return;
+            s.expanded.increment();
+            int[] from = s.layout.getFrom();
+            int[] over = s.layout.getOver();
+            int[] to = s.layout.getTo();
+            long frogs = this.green | this.red;
+            List<Subtree> children = new ArrayList<>();
+            for (int j = 0; j < to.length; j++) {
+                if ((frogs >>> from[j] & this.green >>> over[j] & ~frogs >>> to[j] & 1) == 0) continue;
+                long[] child = jump(this.green, this.red, from[j], over[j], to[j]);
+                if (s.dead.contains(new State(child[0], child[1]))) continue;
+                int[] path = Arrays.copyOf(this.path, this.path.length + 1);
+                path[this.path.length] = j;
+                children.add(new Subtree(s, child[0], child[1], path));
+            }
+            invokeAll(children);
+            if (s.found.get() == null) s.dead.add(new State(this.green, this.red));
+        }
+    }
+
+    private final ForkJoinPool pool; // the workers
+    private final int split; // depth the subtrees stop becoming tasks at
+    private long expanded = 0; // positions expanded by the last solve
+    private long tasks = 0; // tasks made by the last solve
+    private int deadStates = 0; // dead set size after the last solve
+
+    /**
+     * Makes a solver on the common pool with the default split depth
+     */
+    public ParallelHoppersSolver() {
+        this(ForkJoinPool.commonPool(), DEFAULT_SPLIT_DEPTH);
+    }
+
+    /**
+     * Makes a solver
+     * @param pool the pool the tasks run on
+     * @param split depths below the root whose subtrees become tasks
+     */
+    public ParallelHoppersSolver(ForkJoinPool pool, int split) {
+        this.pool = pool;
+        this.split = split;
+    }
+
+    /**
+     * Finds a shortest solution
+     * @param start config
+     * @return the Solution, or null if there is none
+     */
+    public Solution solve(HoppersConfig start) {
+        if (!HoppersLayout.fits(start)) {
+            return new Solver().solve(start);
+        }
+        HoppersLayout layout = new HoppersLayout(start);
+        Search search = new Search(layout, this.split);
+        this.pool.invoke(new Subtree(search, layout.pack(start, HoppersConfig.GREEN),
+                layout.pack(start, HoppersConfig.RED), new int[0]));
+        this.expanded = search.expanded.sum();
+        this.tasks = search.tasks.sum();
+        this.deadStates = search.dead.size();
+        int[] jumps = search.found.get();
+        if (jumps == null) return null;
+        int[] moves = new int[jumps.length];
+        for (int i = 0; i < jumps.length; i++) {
+            moves[i] = layout.move(jumps[i]);
+        }
+        return new Solution(start, moves);
+    }
+
+    /**
+     * Searches one subtree alone, depth first
+     * @param s the search
+     * @param green green frog mask
+     * @param red red frog mask
+     * @param stack jumps from the root; filled in from depth on
+     * @param depth jumps made so far
+     * @return true if a solution was found here or elsewhere, so the caller should stop
+     */
+    private static boolean dfs(Search s, long green, long red, int[] stack, int depth) {
+        if (s.found.get() != null) return true;
+        if (green == 0) {
+            if (Long.bitCount(red) != 1) return false;
+            s.found.compareAndSet(null, Arrays.copyOf(stack, depth));
+            return true;
+        }
+        State state = new State(green, red);
+        if (s.dead.contains(state)) return false;
+        s.expanded.increment();
+        int[] from = s.layout.getFrom();
+        int[] over = s.layout.getOver();
+        int[] to = s.layout.getTo();
+        long frogs = green | red;
+        for (int j = 0; j < to.length; j++) {
+            if ((frogs >>> from[j] & green >>> over[j] & ~frogs >>> to[j] & 1) == 0) continue;
+            long[] child = jump(green, red, from[j], over[j], to[j]);
+            stack[depth] = j;
+            if (dfs(s, child[0], child[1], stack, depth + 1)) return true;
+        }
+        s.dead.add(state);
+        return false;
+    }
+
+    /**
+     * @return green and red masks after a legal jump; the jumping frog keeps its color
+     */
+    private static long[] jump(long green, long red, int from, int over, int to) {
+        long moved = 1L << from | 1L << to;
+        long g = green & ~(1L << over);
+        if ((green >>> from & 1) != 0) return new long[]{g ^ moved, red};
+        return new long[]{g, red ^ moved};
+    }
+
+    /**
+     * @return positions expanded by the last solve, over every worker
+     */
+    public long getExpanded() {
+        return this.expanded;
+    }
+
+    /**
+     * @return tasks made by the last solve
+     */
+    public long getTasks() {
+        return this.tasks;
+    }
+
+    /**
+     * @return positions in the dead set when the last solve ended
+     */
+    public int getDeadStates() {
+        return this.deadStates;
+    }
+
+    /**
+     * Solves every Hoppers puzzle in a directory with HoppersBatchSolver, then with this solver on 1, 2, 4, ...
+     * workers up to the number of cores, checking the solution lengths agree
+     * Usage: java puzzles.common.batch.ParallelHoppersSolver directory [split depth]
+     * @param args the directory and the split depth
+     * @throws IOException if a file can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java ParallelHoppersSolver directory [split depth]");
+            return;
+        }
+        int split = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SPLIT_DEPTH;
+        File[] files = new File(args[0]).listFiles(File::isFile);
+        Arrays.sort(files);
+        for (File f : files) {
+            if (PuzzleFiles.isJamFile(f.getPath())) continue;
+            HoppersConfig start = new HoppersConfig(f.getPath());
+            long begin = System.nanoTime();
+            Solution reference = new HoppersBatchSolver().solve(start);
+            System.out.printf("%s: BFS %.1f ms", f.getName(), (System.nanoTime() - begin) / 1e6);
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int workers = 1; ; workers = Math.min(cores, workers * 2)) {
+                ForkJoinPool pool = new ForkJoinPool(workers);
+                ParallelHoppersSolver solver = new ParallelHoppersSolver(pool, split);
+                begin = System.nanoTime();
+                Solution solution = solver.solve(start);
+                double millis = (System.nanoTime() - begin) / 1e6;
+                pool.shutdown();
+                if ((solution == null) != (reference == null)
+                        || solution != null && solution.getLength() != reference.getLength()) {
+                    throw new IllegalStateException("solution length differs on " + f.getName());
+                }
+                System.out.printf(", %d workers %.1f ms (%d expanded, %d tasks)", workers, millis,
+                        solver.getExpanded(), solver.getTasks());
+                if (workers == cores) break;
+            }
+            System.out.println(reference == null ? ", no solution" : ", " + reference.getLength() + " jumps");
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.Solution;
+import puzzles.hoppers.model.HoppersConfig;
+import puzzles.jam.model.JamConfig;
+
+/**
+ * Versioned binary format for storing solved puzzles, shared by PuzzleArchiveWriter and PuzzleArchiveReader
+ *
+ * File layout (big-endian):
+ *   header: int magic "PZLA", short version, short flags (0)
+ *   record: byte type ('J' or 'H'), ushort state length, packed start state (Configuration.encode()),
+ *           int move count (-1 if unsolved), packed moves
+ * Jam moves take 2 bytes (car index, signed delta); Hoppers moves take 4 bytes (from cell, to cell as ushorts,
+ * cells numbered row * cols + col).
+ * @author Kilian Jakstis
+ */
+public class PuzzleArchive {
+    public static final int MAGIC = 0x505A4C41; // "PZLA"
+    public static final short VERSION = 1; // current format version
+    public static final int UNSOLVED = -1; // move count stored for puzzles with no solution
+
+    /**
+     * Utility class, no instances
+     */
+    private PuzzleArchive() {
+    }
+
+    /**
+     * A single puzzle read back from an archive
+     */
+    public static class Record {
+        private final Configuration start; // the starting configuration
+        private final Solution solution; // the stored solution, or null if unsolved
+
+        /**
+         * Makes a record
+         * @param start the starting configuration
+         * @param solution the stored solution, or null if the puzzle has no solution
+         */
+        public Record(Configuration start, Solution solution) {
+            this.start = start;
+            this.solution = solution;
+        }
+
+        /**
+         * @return the starting configuration
+         */
+        public Configuration getStart() {
+            return this.start;
+        }
+
+        /**
+         * @return is there a stored solution?
+         */
+        public boolean isSolved() {
+            return this.solution != null;
+        }
+
+        /**
+         * @return the number of moves in the solution, or -1 if unsolved
+         */
+        public int getLength() {
+            return this.solution == null ? UNSOLVED : this.solution.getLength();
+        }
+
+        /**
+         * @return the stored solution, or null if unsolved; boards are replayed lazily from the start
+         */
+        public Solution getSolution() {
+            return this.solution;
+        }
+    }
+
+    /**
+     * @return the record type byte for a configuration
+     */
+    static byte typeOf(Configuration config) {
+        if (config instanceof JamConfig) return BulkPuzzleFormat.JAM;
+        if (config instanceof HoppersConfig) return BulkPuzzleFormat.HOPPERS;
+        throw new IllegalArgumentException("Unsupported configuration: " + config.getClass().getName());
+    }
+
+    /**
+     * @return the number of bytes one packed move takes for a record type
+     */
+    static int moveBytes(byte type) {
+        return type == BulkPuzzleFormat.JAM ? 2 : 4;
+    }
+
+    /**
+     * Unpacks a start state
+     * @param type the record type
+     * @param state the packed state
+     * @return the configuration
+     */
+    static Configuration decode(byte type, byte[] state) {
+        if (type == BulkPuzzleFormat.JAM) return new JamConfig(state);
+        if (type == BulkPuzzleFormat.HOPPERS) return new HoppersConfig(state);
+        throw new IllegalArgumentException("Unknown record type: " + type);
+    }
+}
@@ -0,0 +1,128 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.Solution;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streaming reader for the binary puzzle archive format described in PuzzleArchive
+ * Records are read sequentially through a FileChannel into a direct buffer; nothing is parsed or re-solved.
+ * @author Kilian Jakstis
+ */
+public class PuzzleArchiveReader implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16; // bytes read per channel read
+    private final FileChannel channel; // the archive file
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE); // unread input
+    private final short version; // format version of the file
+
+    /**
+     * Opens an archive and checks its header
+     * @param file the archive file
+     * @throws IOException if the file can't be read or isn't an archive
+     */
+    public PuzzleArchiveReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.buffer.flip();
+        if (!this.fill(8) || this.buffer.getInt() != PuzzleArchive.MAGIC) {
+            throw new IOException("Not a puzzle archive: " + file);
+        }
+        this.version = this.buffer.getShort();
+        this.buffer.getShort();
+        if (this.version > PuzzleArchive.VERSION) {
+            throw new IOException("Unsupported archive version " + this.version);
+        }
+    }
+
+    /**
+     * Reads the next record
+     * @return the record, or null at the end of the archive
+     * @throws IOException if reading fails or the archive is truncated
+     */
+    public PuzzleArchive.Record next() throws IOException {
+        if (!this.fill(1)) return null;
+        if (!this.fill(3)) throw new IOException("Truncated archive");
+        byte type = this.buffer.get();
+        byte[] state = new byte[this.buffer.getShort() & 0xFFFF];
+        if (!this.fill(state.length + 4)) throw new IOException("Truncated archive");
+        this.buffer.get(state);
+        int count = this.buffer.getInt();
+        int[] moves = null;
+        if (count != PuzzleArchive.UNSOLVED) {
+            moves = new int[count];
+            int width = PuzzleArchive.moveBytes(type);
+            for (int i = 0; i < count; i++) {
+                if (!this.fill(width)) throw new IOException("Truncated archive");
+                if (width == 2) {
+                    moves[i] = ((this.buffer.get() & 0xFF) << 8) | (this.buffer.get() & 0xFF);
+                } else {
+                    moves[i] = this.buffer.getInt();
+                }
+            }
+        }
+        Configuration start = PuzzleArchive.decode(type, state);
+        return new PuzzleArchive.Record(start, moves == null ? null : new Solution(start, moves));
+    }
+
+    /**
+     * Makes sure at least the given number of bytes are buffered
+     * @return false if the file ends first
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (this.buffer.remaining() >= bytes) return true;
+        this.buffer.compact();
+        while (this.buffer.position() < bytes) {
+            if (this.channel.read(this.buffer) < 0) break;
+        }
+        this.buffer.flip();
+        return this.buffer.remaining() >= bytes;
+    }
+
+    /**
+     * @return the format version of the open archive
+     */
+    public short getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Closes the archive
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Prints a summary of an archive
+     * Usage: java puzzles.common.batch.PuzzleArchiveReader archive.bin
+     * @param args the archive file
+     * @throws IOException if reading fails
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: java PuzzleArchiveReader archive.bin");
+            return;
+        }
+        long puzzles = 0;
+        long solved = 0;
+        long moves = 0;
+        long start = System.nanoTime();
+        try (PuzzleArchiveReader reader = new PuzzleArchiveReader(Path.of(args[0]))) {
+            PuzzleArchive.Record record = reader.next();
+            while (record != null) {
+                puzzles++;
+                if (record.isSolved()) {
+                    solved++;
+                    moves += record.getLength();
+                }
+                record = reader.next();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Puzzles: %d, solved: %d, total moves: %d (read in %.3f s)%n", puzzles, solved, moves, seconds);
+    }
+}
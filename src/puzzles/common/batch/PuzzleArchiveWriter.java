@@ -0,0 +1,144 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.Solution;
+import puzzles.common.solver.SolutionCache;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streaming writer for the binary puzzle archive format described in PuzzleArchive
+ * Records are packed into a direct buffer and written through a FileChannel. Writes are synchronized so
+ * parallel batch jobs can share one writer.
+ * @author Kilian Jakstis
+ */
+public class PuzzleArchiveWriter implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16; // bytes buffered between channel writes
+    private final FileChannel channel; // the archive file
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE); // pending output
+    private long records = 0; // number of records written
+
+    /**
+     * Creates (or truncates) an archive file and writes its header
+     * @param file the archive file
+     * @throws IOException if the file can't be opened
+     */
+    public PuzzleArchiveWriter(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer.putInt(PuzzleArchive.MAGIC);
+        this.buffer.putShort(PuzzleArchive.VERSION);
+        this.buffer.putShort((short) 0);
+    }
+
+    /**
+     * Appends a puzzle and its solution
+     * @param start the starting configuration
+     * @param solution the solution from the solver, or null if unsolved
+     * @throws IOException if writing fails
+     */
+    public synchronized void write(Configuration start, Solution solution) throws IOException {
+        byte type = PuzzleArchive.typeOf(start);
+        byte[] state = start.encode();
+        this.ensure(7 + state.length);
+        this.buffer.put(type);
+        this.buffer.putShort((short) state.length);
+        this.buffer.put(state);
+        if (solution == null) {
+            this.buffer.putInt(PuzzleArchive.UNSOLVED);
+        } else {
+            this.buffer.putInt(solution.getLength());
+            for (int i = 0; i < solution.getLength(); i++) {
+                int move = solution.getMove(i);
+                this.ensure(4);
+                if (type == BulkPuzzleFormat.JAM) {
+                    this.buffer.put((byte) (move >>> 8));
+                    this.buffer.put((byte) move);
+                } else {
+                    this.buffer.putInt(move);
+                }
+            }
+        }
+        this.records++;
+    }
+
+    /**
+     * Makes room for the given number of bytes in the buffer, flushing if needed
+     */
+    private void ensure(int bytes) throws IOException {
+        if (this.buffer.remaining() < bytes) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Writes everything buffered so far to the channel
+     * @throws IOException if writing fails
+     */
+    public synchronized void flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * @return the number of records written so far
+     */
+    public synchronized long getRecords() {
+        return this.records;
+    }
+
+    /**
+     * Flushes and closes the archive
+     * @throws IOException if writing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.flush();
+        this.channel.close();
+    }
+
+    /**
+     * Solves every puzzle in a directory of data/ files or in a bulk file and archives the results
+     * Usage: java puzzles.common.batch.PuzzleArchiveWriter directory|bulkfile archive.bin
+     * @param args the input and the archive to write
+     * @throws IOException if reading or writing fails
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java PuzzleArchiveWriter directory|bulkfile archive.bin");
+            return;
+        }
+        File input = new File(args[0]);
+        // relabeled duplicates are answered from here instead of re-solved
+        SolutionCache cache = new SolutionCache();
+        try (PuzzleArchiveWriter writer = new PuzzleArchiveWriter(Path.of(args[1]))) {
+            if (input.isDirectory()) {
+                File[] files = input.listFiles(File::isFile);
+                Arrays.sort(files);
+                for (File f : files) {
+                    Configuration start = PuzzleFiles.load(f.getPath());
+                    writer.write(start, cache.solve(start, PuzzleFiles::solve));
+                }
+            } else {
+                try (BulkPuzzleReader reader = new BulkPuzzleReader(input.toPath())) {
+                    reader.forEach(start -> {
+                        try {
+                            writer.write(start, cache.solve(start, PuzzleFiles::solve));
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+                }
+            }
+            System.out.println("Wrote " + writer.getRecords() + " puzzles to " + args[1] + " ("
+                    + cache.getHits() + " duplicates not re-solved)");
+        }
+    }
+}
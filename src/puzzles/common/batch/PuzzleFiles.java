@@ -0,0 +1,95 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.Solution;
+import puzzles.common.solver.Solver;
+import puzzles.hoppers.model.HoppersConfig;
+import puzzles.jam.model.JamConfig;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Helpers for loading puzzle files in the data/ formats without knowing which puzzle they hold
+ * @author Kilian Jakstis
+ */
+public class PuzzleFiles {
+
+    /**
+     * Utility class, no instances
+     */
+    private PuzzleFiles() {
+    }
+
+    /**
+     * Is the file a Traffic Jam file? Jam files have the car count alone on their second line,
+     * Hoppers files have the first board row there.
+     * @param filename the puzzle file
+     * @return true for Jam files, false for Hoppers files
+     * @throws IOException if the file can't be read
+     */
+    public static boolean isJamFile(String filename) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+            br.readLine();
+            String line = br.readLine();
+            return line != null && isNumber(line.trim());
+        }
+    }
+
+    /**
+     * Loads a puzzle file as a JamConfig or HoppersConfig
+     * @param filename the puzzle file
+     * @return the configuration
+     * @throws IOException if the file can't be read
+     */
+    public static Configuration load(String filename) throws IOException {
+        if (isJamFile(filename)) {
+            return new JamConfig(filename);
+        }
+        return new HoppersConfig(filename);
+    }
+
+    /**
+     * Parses puzzle text in either data/ file format as a JamConfig or HoppersConfig
+     * @param text the contents of a puzzle file
+     * @return the configuration
+     * @throws IllegalArgumentException if the text isn't a puzzle
+     */
+    public static Configuration parse(String text) {
+        String[] lines = text.split("\n", 3);
+        if (lines.length < 2) {
+            throw new IllegalArgumentException("Not a puzzle: too few lines");
+        }
+        try {
+            if (isNumber(lines[1].trim())) {
+                return new JamConfig(new StringReader(text));
+            }
+            return new HoppersConfig(new StringReader(text));
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Not a puzzle: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Solves a puzzle with the fastest exact solver for its type: HoppersBatchSolver for Hoppers, Solver otherwise
+     * @param start the puzzle
+     * @return the shortest Solution, or null if there is none
+     */
+    public static Solution solve(Configuration start) {
+        if (start instanceof HoppersConfig hoppers) {
+            return new HoppersBatchSolver().solve(hoppers);
+        }
+        return new Solver().solve(start);
+    }
+
+    /**
+     * @return true if s is a non-empty string of digits
+     */
+    private static boolean isNumber(String s) {
+        if (s.isEmpty()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,381 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.Solution;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Long running pipeline that solves puzzle files as they are dropped into watched directories
+ * Every new or changed .txt file is parsed and solved on a bounded worker pool, and the result is written next to
+ * it as a .solution file whose first line holds the SHA-256 of the puzzle it answers. A file whose content hash
+ * matches its .solution (or the last one solved) is skipped, so touching, re-copying or rescanning files costs a
+ * hash, not a search.
+ * When the pool's queue is full the watching thread solves the next file itself, so it stops draining events
+ * until the workers catch up; if the OS event queue overflows meanwhile the directory is rescanned.
+ * Each file has at most one task in flight; changes that arrive while it is being solved make it run again.
+ * @author Kilian Jakstis
+ */
+public class PuzzleWatcher implements AutoCloseable {
+
+    /**
+     * Files that are puzzles, and the results written next to them
+     */
+    private static final String PUZZLE_SUFFIX = ".txt";
+    private static final String SOLUTION_SUFFIX = ".solution";
+
+    /**
+     * Start of a solution file's first line, followed by the puzzle's hash
+     */
+    private static final String HASH_HEADER = "# sha256 ";
+
+    /**
+     * Queued files per worker before the watching thread solves files itself
+     */
+    private static final int QUEUE_PER_WORKER = 64;
+
+    private final WatchService watcher; // events for every watched directory
+    private final Map<WatchKey, Path> dirs = new ConcurrentHashMap<>(); // watch key -> its directory
+    private final ThreadPoolExecutor pool; // solves the files
+    private final Map<Path, String> hashes = new ConcurrentHashMap<>(); // puzzle file -> hash of its solved content
+    private final Map<Path, Boolean> active = new ConcurrentHashMap<>(); // files with a task in flight -> changed since
+    private final LongAdder solved = new LongAdder(); // results written
+    private final LongAdder unchanged = new LongAdder(); // files skipped because their hash matched
+    private final LongAdder failed = new LongAdder(); // files that couldn't be parsed
+    private final LongAdder rescans = new LongAdder(); // overflows handled by rescanning
+
+    /**
+     * Makes a watcher with a worker per core
+     * @throws IOException if the watch service can't be created
+     */
+    public PuzzleWatcher() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Makes a watcher
+     * @param workers number of solving threads
+     * @throws IOException if the watch service can't be created
+     */
+    public PuzzleWatcher(int workers) throws IOException {
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers * QUEUE_PER_WORKER), r -> {
+                    Thread t = new Thread(r, "puzzle-watcher-worker");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Watches a directory and the ones below it, and queues the puzzles already in them
+     * @param dir the directory
+     * @throws IOException if it can't be walked or watched
+     */
+    public void watch(Path dir) throws IOException {
+        try (Stream<Path> tree = Files.walk(dir)) {
+            for (Path sub : (Iterable<Path>) tree.filter(Files::isDirectory)::iterator) {
+                WatchKey key = sub.register(this.watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                this.dirs.put(key, sub);
+                this.scan(sub);
+            }
+        }
+    }
+
+    /**
+     * Queues every puzzle file in a directory; unchanged ones are skipped by their hash
+     * @param dir the directory
+     * @throws IOException if it can't be listed
+     */
+    private void scan(Path dir) throws IOException {
+        // a listing doesn't stat the entries, so temp files vanishing meanwhile don't break it
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                if (isPuzzle(file)) this.submit(file);
+            }
+        }
+    }
+
+    /**
+     * Handles watch events until the watcher is closed or the thread is interrupted
+     */
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = this.watcher.take();
+                Path dir = this.dirs.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (dir == null) break;
+                    this.handle(dir, event);
+                }
+                if (!key.reset()) this.dirs.remove(key);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // closed, done
+        }
+    }
+
+    /**
+     * Reacts to one event in a watched directory
+     * @param dir the directory
+     * @param event what happened
+     */
+    private void handle(Path dir, WatchEvent<?> event) {
+        try {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were lost; the hashes make a full rescan cheap
+                this.rescans.increment();
+                this.scan(dir);
+                return;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                this.hashes.remove(path);
+            } else if (Files.isDirectory(path)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) this.watch(path);
+            } else if (isPuzzle(path)) {
+                this.submit(path);
+            }
+        } catch (IOException e) {
+            // the directory went away under us
+            System.err.println("Watch error in " + dir + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queues a puzzle file unless it already has a task; if it has one, the task runs again when it ends
+     * @param file the puzzle file
+     */
+    private void submit(Path file) {
+        // atomic against the task's remove, so a change can't slip in between its last run and its exit
+        if (this.active.compute(file, (f, changed) -> changed != null)) return;
+        this.pool.execute(() -> {
+            boolean finished = false;
+            try {
+                do {
+                    this.active.put(file, false);
+                    this.process(file);
+                } while (!this.active.remove(file, false));
+                finished = true;
+            } finally {
+                // a run that threw must still let go of the file, or it is never solved again
+                if (!finished) this.active.remove(file);
+            }
+        });
+    }
+
+    /**
+     * Solves a puzzle file and writes its .solution, unless the content is the one already solved
+     * @param file the puzzle file
+     */
+    private void process(Path file) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            System.err.println("Can't read " + file + ": " + e.getMessage());
+            return;
+        }
+        String hash = sha256(bytes);
+        if (hash.equals(this.hashes.get(file)) || hash.equals(readHash(solutionFile(file)))) {
+            this.hashes.put(file, hash);
+            this.unchanged.increment();
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(HASH_HEADER).append(hash).append('\n');
+        sb.append("File: ").append(file.getFileName()).append('\n');
+        try {
+            Configuration start = PuzzleFiles.parse(new String(bytes, StandardCharsets.UTF_8));
+            long begin = System.nanoTime();
+            Solution solution = PuzzleFiles.solve(start);
+            double millis = (System.nanoTime() - begin) / 1e6;
+            if (solution == null) {
+                sb.append("No solution\n");
+            } else {
+                sb.append("Moves: ").append(solution.size() - 1).append('\n');
+            }
+            sb.append("Search time: ").append(millis).append(" ms\n");
+            if (solution != null) {
+                for (int i = 0; i < solution.size(); i++) {
+                    sb.append("Step ").append(i).append(":\n").append(solution.get(i)).append('\n');
+                }
+            }
+            this.solved.increment();
+            System.out.printf("%s: %s%n", file, solution == null ? "no solution" : (solution.size() - 1) + " moves");
+        } catch (IllegalArgumentException e) {
+            // probably half written; it will be back when it changes, and its hash stops a retry until then
+            sb.append("Error: ").append(e.getMessage()).append('\n');
+            this.failed.increment();
+            System.out.printf("%s: %s%n", file, e.getMessage());
+        } catch (RuntimeException e) {
+            // the solver broke on it; recorded the same way, so it isn't retried until the file changes
+            sb.append("Error: ").append(e).append('\n');
+            this.failed.increment();
+            System.out.printf("%s: %s%n", file, e);
+        }
+        try {
+            write(solutionFile(file), sb.toString());
+            this.hashes.put(file, hash);
+        } catch (IOException e) {
+            System.err.println("Can't write the solution for " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a file through a temporary file and a rename, so readers never see half of it
+     * @param file where to write
+     * @param text what to write
+     * @throws IOException if writing fails
+     */
+    private static void write(Path file, String text) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, text);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the puzzle hash on the first line of a solution file, or null if there is none
+     */
+    private static String readHash(Path solution) {
+        try (BufferedReader br = Files.newBufferedReader(solution)) {
+            String line = br.readLine();
+            return line != null && line.startsWith(HASH_HEADER) ? line.substring(HASH_HEADER.length()) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the hex SHA-256 of the bytes
+     */
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+
+    /**
+     * @return the .solution file next to a puzzle file
+     */
+    private static Path solutionFile(Path puzzle) {
+        String name = puzzle.getFileName().toString();
+        return puzzle.resolveSibling(name.substring(0, name.length() - PUZZLE_SUFFIX.length()) + SOLUTION_SUFFIX);
+    }
+
+    /**
+     * @return true for regular files with the puzzle suffix
+     */
+    private static boolean isPuzzle(Path path) {
+        return path.getFileName().toString().endsWith(PUZZLE_SUFFIX) && Files.isRegularFile(path);
+    }
+
+    /**
+     * Waits for the queued and running files to finish
+     * @param timeout how long to wait in milliseconds
+     * @return true if everything finished in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitIdle(long timeout) throws InterruptedException {
+        long begin = System.nanoTime();
+        while (!this.active.isEmpty()) {
+            if (System.nanoTime() - begin > TimeUnit.MILLISECONDS.toNanos(timeout)) return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * @return results written
+     */
+    public long getSolved() {
+        return this.solved.sum();
+    }
+
+    /**
+     * @return files skipped because their content was already solved
+     */
+    public long getUnchanged() {
+        return this.unchanged.sum();
+    }
+
+    /**
+     * @return files that couldn't be parsed
+     */
+    public long getFailed() {
+        return this.failed.sum();
+    }
+
+    /**
+     * @return times a directory was rescanned after the event queue overflowed
+     */
+    public long getRescans() {
+        return this.rescans.sum();
+    }
+
+    /**
+     * Stops watching and lets the workers finish the files they have
+     * @throws IOException if the watch service can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.watcher.close();
+        this.pool.shutdown();
+    }
+
+    /**
+     * Solves the puzzles in the directories, then keeps solving new and changed ones until killed
+     * Usage: java puzzles.common.batch.PuzzleWatcher [once] dir...
+     * @param args "once" to stop after the files already there, then the directories
+     * @throws IOException if a directory can't be watched
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean once = args.length > 0 && args[0].equals("once");
+        if (args.length < (once ? 2 : 1)) {
+            System.out.println("Usage: java PuzzleWatcher [once] dir...");
+            return;
+        }
+        long start = System.nanoTime();
+        try (PuzzleWatcher watcher = new PuzzleWatcher()) {
+            for (int i = once ? 1 : 0; i < args.length; i++) {
+                watcher.watch(Path.of(args[i]));
+            }
+            if (!once) {
+                watcher.run();
+                return;
+            }
+            watcher.awaitIdle(Long.MAX_VALUE);
+            System.out.printf("Solved: %d, unchanged: %d, failed: %d in %.3f s%n", watcher.getSolved(),
+                    watcher.getUnchanged(), watcher.getFailed(), (System.nanoTime() - start) / 1e9);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package puzzles.common.batch;
+
+/**
+ * LaneKernels one position at a time, for JVMs started without the Vector API and for the tails of vector loops
+ * @author Kilian Jakstis
+ */
+final class ScalarLaneKernels implements LaneKernels {
+
+    /**
+     * Stateless, so one is enough
+     */
+    static final ScalarLaneKernels INSTANCE = new ScalarLaneKernels();
+
+    /**
+     * Use INSTANCE
+     */
+    private ScalarLaneKernels() {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void hash(long[] a, long[] b, int count, long[] out) {
+        hash(a, b, 0, count, out);
+    }
+
+    /**
+     * Hashes positions start until count
+     */
+    static void hash(long[] a, long[] b, int start, int count, long[] out) {
+        for (int i = start; i < count; i++) {
+            out[i] = LaneKernels.hash(a[i], b[i]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void jumps(long[] green, long[] red, int count, int[] from, int[] over, int[] to, long[] out) {
+        jumps(green, red, 0, count, from, over, to, out);
+    }
+
+    /**
+     * Masks positions start until count
+     */
+    static void jumps(long[] green, long[] red, int start, int count, int[] from, int[] over, int[] to, long[] out) {
+        for (int i = start; i < count; i++) {
+            long g = green[i];
+            long frogs = g | red[i];
+            long empty = ~frogs;
+            for (int w = 0; w * 64 < to.length; w++) {
+                long mask = 0;
+                int end = Math.min(to.length, w * 64 + 64);
+                for (int j = w * 64; j < end; j++) {
+                    mask |= (frogs >>> from[j] & g >>> over[j] & empty >>> to[j] & 1) << j;
+                }
+                out[w * count + i] = mask;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,170 @@
+package puzzles.common.batch;
+import puzzles.common.solver.AnytimeSolver;
+import puzzles.common.solver.BitstateSolver;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.DeltaConfiguration;
+import puzzles.common.solver.FrontierSolver;
+import puzzles.common.solver.HashDistributedSolver;
+import puzzles.common.solver.Heuristic;
+import puzzles.common.solver.IDAStarSolver;
+import puzzles.common.solver.SearchResult;
+import puzzles.common.solver.Solution;
+import puzzles.common.solver.Solver;
+import puzzles.hoppers.model.GreenFrogsHeuristic;
+import puzzles.hoppers.model.HoppersConfig;
+import puzzles.jam.model.BlockingCarsHeuristic;
+import puzzles.jam.model.JamConfig;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Headless launcher that solves a single puzzle file with the solver a mode picks and prints the steps
+ * Only depends on the core module, so it starts without loading JavaFX; see bin/build-headless.sh for the
+ * AppCDS archive and native image
+ * Usage: java puzzles.common.batch.Solve filename [mode [options]], modes as in USAGE
+ * @author Kilian Jakstis
+ */
+public class Solve {
+
+    /**
+     * The modes and what they run
+     */
+    private static final String USAGE = """
+            Usage: java Solve filename [mode [options]]
+              bfs                   the BFS Solver (default)
+              ida [max moves]       IDAStarSolver; gives up past max moves, and on an unsolvable puzzle only stops
+                                    by itself once the whole puzzle fits its 65536 entry table
+              hda                   HashDistributedSolver on every core
+              bitstate              approximate BitstateSolver on a 64 MB filter
+              delta                 the BFS Solver over DeltaConfigurations
+              frontier              FrontierSolver (Rush Hour only)
+              layered [spill dir]   LayeredHoppersSolver (Hoppers only), spilling finished levels to the directory
+              anytime [ms]          AnytimeSolver, printing each improvement until proven optimal or out of time
+                                    (10 s unless given)
+              checkpoint dir [ms]   CheckpointSolver, resuming from and checkpointing to the directory (every
+                                    minute unless given)""";
+
+    /**
+     * Transposition table size for the ida mode
+     */
+    private static final int IDA_TABLE = 1 << 16;
+
+    /**
+     * Filter size for the bitstate mode, 64 MB
+     */
+    private static final long BITSTATE_BITS = 8L << 26;
+
+    /**
+     * Time for the anytime mode unless given, in milliseconds
+     */
+    private static final long ANYTIME_BUDGET = 10_000;
+
+    /**
+     * Solves the puzzle file given on the command line
+     * @param args the puzzle file, then the mode and its options
+     * @throws IOException if the file can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        String mode = args.length > 1 ? args[1] : "bfs";
+        if (args.length < 1 || mode.equals("checkpoint") && args.length < 3) {
+            System.out.println(USAGE);
+            return;
+        }
+        Configuration start = PuzzleFiles.load(args[0]);
+        StringBuilder sb = new StringBuilder();
+        sb.append("File: ").append(args[0]).append('\n').append(start).append('\n');
+        Solution solution;
+        Heuristic heuristic = start instanceof JamConfig ? new BlockingCarsHeuristic() : new GreenFrogsHeuristic();
+        switch (mode) {
+            case "ida" -> {
+                int maxBound = args.length > 2 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+                IDAStarSolver solver = new IDAStarSolver(heuristic, IDA_TABLE, maxBound);
+                solution = solver.solve(start);
+                sb.append("Iterations: ").append(solver.getIterations()).append('\n');
+                sb.append("Nodes per iteration: ").append(Arrays.toString(solver.getNodesPerIteration())).append('\n');
+                if (solver.isExhausted()) sb.append("Gave up past ").append(maxBound).append(" moves\n");
+            }
+            case "hda" -> {
+                HashDistributedSolver solver = new HashDistributedSolver(Runtime.getRuntime().availableProcessors(),
+                        heuristic);
+                solution = solver.solve(start);
+                sb.append("Expanded configs: ").append(solver.getExpanded()).append('\n');
+            }
+            case "bitstate" -> {
+                BitstateSolver solver = new BitstateSolver(BITSTATE_BITS);
+                solution = solver.solve(start);
+                sb.append("Unique configs: ").append(solver.getUniqueConfigs()).append('\n');
+                sb.append("Omission probability: ").append(solver.getOmissionProbability()).append('\n');
+                sb.append("Expected omissions: ").append(solver.getExpectedOmissions()).append('\n');
+            }
+            case "delta" -> {
+                SearchResult result = new Solver().search(new DeltaConfiguration(start));
+                // replay the moves on the real boards
+                solution = result.isSolved() ? new Solution(start, result.solution().getMoves()) : null;
+                sb.append("Total configs: ").append(result.totalConfigs()).append('\n');
+                sb.append("Unique configs: ").append(result.uniqueConfigs()).append('\n');
+            }
+            case "frontier" -> {
+                if (!start.isReversible()) {
+                    System.out.println("frontier only solves puzzles whose moves can be undone, " + args[0]
+                            + " is Hoppers");
+                    return;
+                }
+                FrontierSolver solver = new FrontierSolver();
+                solution = solver.solve(start);
+                sb.append("Expanded configs: ").append(solver.getExpanded()).append('\n');
+                sb.append("Searches: ").append(solver.getSearches()).append('\n');
+                sb.append("Most configs held: ").append(solver.getWidest()).append('\n');
+            }
+            case "layered" -> {
+                if (!(start instanceof HoppersConfig hoppers)) {
+                    System.out.println("layered only solves Hoppers puzzles, " + args[0] + " is Rush Hour");
+                    return;
+                }
+                LayeredHoppersSolver solver = new LayeredHoppersSolver(args.length > 2 ? Path.of(args[2]) : null);
+                solution = solver.solve(hoppers);
+                sb.append("Expanded configs: ").append(solver.getExpanded()).append('\n');
+                sb.append("Widest level: ").append(solver.getWidest()).append('\n');
+                sb.append("Finished levels: ").append(solver.getHeapBytes() + solver.getSpilledBytes())
+                        .append(" bytes\n");
+            }
+            case "anytime" -> {
+                long budget = args.length > 2 ? Long.parseLong(args[2]) : ANYTIME_BUDGET;
+                AnytimeSolver.Stage last = new AnytimeSolver(heuristic).solve(start, budget,
+                        stage -> sb.append(stage).append('\n'));
+                solution = last.solution();
+            }
+            case "checkpoint" -> {
+                long interval = args.length > 3 ? Long.parseLong(args[3]) : CheckpointSolver.DEFAULT_INTERVAL;
+                CheckpointSolver solver = new CheckpointSolver(Path.of(args[2]), interval);
+                SearchResult result = solver.search(start);
+                solution = result.solution();
+                sb.append("Total configs: ").append(result.totalConfigs()).append('\n');
+                sb.append("Unique configs: ").append(result.uniqueConfigs()).append('\n');
+                sb.append("Resumed at: ").append(solver.getResumedAt()).append(" configs\n");
+                sb.append("Checkpoints: ").append(solver.getCheckpoints()).append(" in ")
+                        .append(solver.getCheckpointMillis()).append(" ms\n");
+            }
+            case "bfs" -> {
+                SearchResult result = new Solver().search(start);
+                solution = result.solution();
+                sb.append("Total configs: ").append(result.totalConfigs()).append('\n');
+                sb.append("Unique configs: ").append(result.uniqueConfigs()).append('\n');
+                sb.append("Search time: ").append(result.millis()).append(" ms\n");
+            }
+            default -> {
+                System.out.println(USAGE);
+                return;
+            }
+        }
+        if (solution == null) {
+            sb.append("No solution\n");
+        } else {
+            for (int i = 0; i < solution.size(); i++) {
+                sb.append("Step ").append(i).append(":\n").append(solution.get(i)).append('\n');
+            }
+        }
+        System.out.print(sb);
+    }
+}
@@ -0,0 +1,81 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Solution;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Client for SolverServer; one client holds one connection and sends one request at a time
+ * @author Kilian Jakstis
+ */
+public class SolverClient implements AutoCloseable {
+    private final SocketChannel channel; // connection to the server
+    private final BufferedReader in; // responses
+    private final PrintWriter out; // requests
+
+    /**
+     * Connects to a solver server
+     * @param address the server address, see SolverServer.address(String)
+     * @throws IOException if the connection fails
+     */
+    public SolverClient(SocketAddress address) throws IOException {
+        this.channel = SocketChannel.open(address);
+        this.in = new BufferedReader(new InputStreamReader(Channels.newInputStream(this.channel), StandardCharsets.UTF_8));
+        this.out = new PrintWriter(new OutputStreamWriter(Channels.newOutputStream(this.channel), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Asks the server for the moves of a shortest solution
+     * @param puzzleText the contents of a puzzle file
+     * @return the packed moves, or null if the puzzle has no solution
+     * @throws IOException if the connection fails or the server reports an error
+     */
+    public synchronized int[] solveMoves(String puzzleText) throws IOException {
+        this.out.print(puzzleText);
+        if (!puzzleText.endsWith("\n")) this.out.println();
+        this.out.println(SolverServer.END);
+        this.out.flush();
+        String response = this.in.readLine();
+        if (response == null) {
+            throw new IOException("Server closed the connection");
+        }
+        if (response.equals("UNSOLVABLE")) {
+            return null;
+        }
+        if (!response.startsWith("SOLVED ")) {
+            throw new IOException("Server error: " + response);
+        }
+        String[] parts = response.split(" ");
+        int[] moves = new int[Integer.parseInt(parts[1])];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = Integer.parseInt(parts[i + 2]);
+        }
+        return moves;
+    }
+
+    /**
+     * Asks the server to solve a puzzle and replays the answer locally
+     * @param puzzleText the contents of a puzzle file
+     * @return the solution, or null if the puzzle has no solution
+     * @throws IOException if the connection fails or the server reports an error
+     */
+    public Solution solve(String puzzleText) throws IOException {
+        int[] moves = this.solveMoves(puzzleText);
+        return moves == null ? null : new Solution(PuzzleFiles.parse(puzzleText), moves);
+    }
+
+    /**
+     * Closes the connection
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,102 @@
+package puzzles.common.batch;
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Load generator for SolverServer
+ * Sends random puzzles from a directory at increasing concurrency (1, 2, 4, ... clients) and reports the
+ * throughput and the median and p99 latency at each level
+ * Usage: java puzzles.common.batch.SolverLoadGenerator tcp:port|unix:path directory [maxClients] [secondsPerLevel]
+ * @author Kilian Jakstis
+ */
+public class SolverLoadGenerator {
+
+    /**
+     * Runs the load levels
+     * @param args the server address, puzzle directory, max concurrency and seconds per level
+     * @throws Exception if the puzzles can't be read or a client fails
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: java SolverLoadGenerator tcp:port|unix:path directory [maxClients] [secondsPerLevel]");
+            return;
+        }
+        SocketAddress address = SolverServer.address(args[0]);
+        File[] files = new File(args[1]).listFiles(File::isFile);
+        if (files == null || files.length == 0) {
+            System.out.println("No puzzles in " + args[1]);
+            return;
+        }
+        List<String> puzzles = new ArrayList<>();
+        for (File f : files) {
+            puzzles.add(Files.readString(f.toPath()));
+        }
+        int maxClients = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        long levelNanos = (args.length > 3 ? Long.parseLong(args[3]) : 5) * 1_000_000_000L;
+        System.out.println("clients  requests  req/sec  p50 ms  p99 ms");
+        for (int clients = 1; clients <= maxClients; clients *= 2) {
+            runLevel(address, puzzles, clients, levelNanos);
+        }
+    }
+
+    /**
+     * Runs one concurrency level and prints its results
+     * @param address the server address
+     * @param puzzles the puzzle texts to choose from
+     * @param clients number of concurrent clients
+     * @param levelNanos how long to run
+     */
+    private static void runLevel(SocketAddress address, List<String> puzzles, int clients, long levelNanos)
+            throws InterruptedException {
+        long[][] latencies = new long[clients][];
+        Thread[] threads = new Thread[clients];
+        long deadline = System.nanoTime() + levelNanos;
+        for (int i = 0; i < clients; i++) {
+            final int index = i;
+            threads[i] = new Thread(() -> latencies[index] = runClient(address, puzzles, deadline));
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        double seconds = levelNanos / 1e9;
+        System.out.printf("%7d  %8d  %7.1f  %6.2f  %6.2f%n", clients, all.length, all.length / seconds,
+                percentile(all, 0.50) / 1e6, percentile(all, 0.99) / 1e6);
+    }
+
+    /**
+     * Sends requests from one connection until the deadline
+     * @return the latency of every request in nanoseconds
+     */
+    private static long[] runClient(SocketAddress address, List<String> puzzles, long deadline) {
+        long[] latencies = new long[1024];
+        int count = 0;
+        try (SolverClient client = new SolverClient(address)) {
+            while (System.nanoTime() < deadline) {
+                String puzzle = puzzles.get(ThreadLocalRandom.current().nextInt(puzzles.size()));
+                long start = System.nanoTime();
+                client.solveMoves(puzzle);
+                if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+                latencies[count++] = System.nanoTime() - start;
+            }
+        } catch (IOException e) {
+            System.out.println("Client failed: " + e.getMessage());
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    /**
+     * @return the value at the given fraction of a sorted array, 0 if it is empty
+     */
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+}
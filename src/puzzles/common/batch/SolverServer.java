@@ -0,0 +1,231 @@
+package puzzles.common.batch;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.Solution;
+import puzzles.common.solver.SolutionCache;
+import puzzles.common.solver.Solver;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Headless solver service listening on a local TCP port or Unix domain socket
+ *
+ * Protocol (UTF-8 lines): the client sends the text of a puzzle file in the data/ format followed by a line
+ * holding only END. The server answers with one line:
+ *   SOLVED n m1 ... mn   the packed moves of a shortest solution (see Configuration.moveTo)
+ *   UNSOLVABLE           the puzzle has no solution
+ *   ERROR message        the request couldn't be parsed or solved
+ * A connection can send any number of requests in sequence.
+ *
+ * Searches run on a fixed worker pool. Concurrent requests for the same start state share a single search, keyed
+ * by the canonical encoding (SolutionCache.key) so relabeled copies of a puzzle share it too.
+ * @author Kilian Jakstis
+ */
+public class SolverServer implements AutoCloseable {
+    public static final String END = "END"; // terminates a request
+    private final ServerSocketChannel server; // the listening socket
+    private final ExecutorService workers; // fixed pool that runs the searches
+    private final Solver solver = new Solver(); // shared by every worker; searches keep no state in it
+    private final ExecutorService connections; // one thread per open connection
+    private final Function<String, Configuration> parser; // turns request text into a configuration
+    private final ConcurrentHashMap<String, CompletableFuture<Solution>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Binds the server; call start to begin accepting connections
+     * @param address where to listen, see address(String)
+     * @param threads number of search worker threads
+     * @param parser turns request text into a configuration
+     * @throws IOException if the socket can't be bound
+     */
+    public SolverServer(SocketAddress address, int threads, Function<String, Configuration> parser) throws IOException {
+        if (address instanceof UnixDomainSocketAddress unix) {
+            Files.deleteIfExists(unix.getPath());
+            this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            this.server = ServerSocketChannel.open();
+        }
+        this.server.bind(address);
+        this.parser = parser;
+        this.workers = Executors.newFixedThreadPool(threads);
+        this.connections = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "solver-connection");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Turns an address string into a socket address
+     * @param address "tcp:port" for a loopback TCP port or "unix:path" for a Unix domain socket
+     * @return the socket address
+     */
+    public static SocketAddress address(String address) {
+        if (address.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(Path.of(address.substring(5)));
+        }
+        if (address.startsWith("tcp:")) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address.substring(4)));
+        }
+        throw new IllegalArgumentException("Address must be tcp:port or unix:path, got " + address);
+    }
+
+    /**
+     * Starts accepting connections on a background thread
+     */
+    public void start() {
+        Thread acceptor = new Thread(() -> {
+            while (this.server.isOpen()) {
+                try {
+                    SocketChannel channel = this.server.accept();
+                    this.connections.execute(() -> this.serve(channel));
+                } catch (IOException e) {
+                    if (this.server.isOpen()) e.printStackTrace();
+                }
+            }
+        }, "solver-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Answers requests on one connection until the client closes it
+     * @param channel the connection
+     */
+    private void serve(SocketChannel channel) {
+        try (channel;
+             BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                     StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                     StandardCharsets.UTF_8))) {
+            StringBuilder request = new StringBuilder();
+            String line = in.readLine();
+            while (line != null) {
+                if (line.equals(END)) {
+                    out.println(this.answer(request.toString()));
+                    out.flush();
+                    request.setLength(0);
+                } else if (!line.isBlank()) {
+                    request.append(line).append('\n');
+                }
+                line = in.readLine();
+            }
+        } catch (IOException e) {
+            // the client went away; nothing to answer
+        }
+    }
+
+    /**
+     * Solves one request and formats the response line
+     * @param text the puzzle text
+     * @return the response
+     */
+    private String answer(String text) {
+        try {
+            Solution solution = this.submit(this.parser.apply(text)).get();
+            if (solution == null) {
+                return "UNSOLVABLE";
+            }
+            StringBuilder sb = new StringBuilder("SOLVED ").append(solution.getLength());
+            for (int i = 0; i < solution.getLength(); i++) {
+                sb.append(' ').append(solution.getMove(i));
+            }
+            return sb.toString();
+        } catch (ExecutionException e) {
+            return "ERROR " + oneLine(String.valueOf(e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERROR interrupted";
+        } catch (RuntimeException e) {
+            return "ERROR " + oneLine(String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * Keeps an error message from breaking the line based protocol
+     * @param message the message
+     * @return the message with every line break replaced by a space
+     */
+    private static String oneLine(String message) {
+        return message.replaceAll("[\\r\\n]+", " ");
+    }
+
+    /**
+     * Solves a configuration on the worker pool, joining an identical search that is already running
+     * @param config the start configuration
+     * @return the future solution (null if unsolvable)
+     */
+    public CompletableFuture<Solution> submit(Configuration config) {
+        String key = SolutionCache.key(config);
+        CompletableFuture<Solution> mine = new CompletableFuture<>();
+        CompletableFuture<Solution> running = this.inFlight.putIfAbsent(key, mine);
+        if (running == null) {
+            running = mine;
+            this.workers.execute(() -> {
+                try {
+                    mine.complete(this.solver.solve(config.canonical()));
+                } catch (Throwable t) {
+                    mine.completeExceptionally(t);
+                } finally {
+                    this.inFlight.remove(key, mine);
+                }
+            });
+        }
+        // the search ran on the canonical board; answer in this request's car letters
+        return running.thenApply(s -> s == null ? null : new Solution(config, config.fromCanonical(s.getMoves())));
+    }
+
+    /**
+     * @return the number of distinct searches currently running or queued
+     */
+    public int getInFlight() {
+        return this.inFlight.size();
+    }
+
+    /**
+     * Stops accepting connections and shuts down the worker pool
+     * @throws IOException if the socket can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.server.close();
+        this.workers.shutdownNow();
+        this.connections.shutdownNow();
+    }
+
+    /**
+     * Runs the server until the process is killed
+     * Usage: java puzzles.common.batch.SolverServer tcp:port|unix:path [threads]
+     * @param args the address and optionally the number of worker threads
+     * @throws IOException if the socket can't be bound
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: java SolverServer tcp:port|unix:path [threads]");
+            return;
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        SolverServer server = new SolverServer(address(args[0]), threads, PuzzleFiles::parse);
+        server.start();
+        System.out.println("Solver server listening on " + args[0] + " with " + threads + " workers");
+        Thread.currentThread().join();
+    }
+}
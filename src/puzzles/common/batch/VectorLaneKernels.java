@@ -0,0 +1,80 @@
+package puzzles.common.batch;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import puzzles.common.solver.Fingerprints;
+
+/**
+ * LaneKernels on the Vector API, a register's worth of positions per step
+ * Only loaded through LaneKernels.best() once the module is known to be present.
+ * @author Kilian Jakstis
+ */
+final class VectorLaneKernels implements LaneKernels {
+
+    /**
+     * Stateless, so one is enough
+     */
+    static final VectorLaneKernels INSTANCE = new VectorLaneKernels();
+
+    /**
+     * Widest long vectors the CPU has
+     */
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    /**
+     * Use INSTANCE
+     */
+    private VectorLaneKernels() {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void hash(long[] a, long[] b, int count, long[] out) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            LongVector h = LongVector.fromArray(SPECIES, a, i).mul(Fingerprints.SEED)
+                    .add(LongVector.fromArray(SPECIES, b, i));
+            // Fingerprints.mix, lane by lane
+            h = h.lanewise(VectorOperators.XOR, h.lanewise(VectorOperators.LSHR, 30)).mul(0xBF58476D1CE4E5B9L);
+            h = h.lanewise(VectorOperators.XOR, h.lanewise(VectorOperators.LSHR, 27)).mul(0x94D049BB133111EBL);
+            h.lanewise(VectorOperators.XOR, h.lanewise(VectorOperators.LSHR, 31)).intoArray(out, i);
+        }
+        ScalarLaneKernels.hash(a, b, bound, count, out);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void jumps(long[] green, long[] red, int count, int[] from, int[] over, int[] to, long[] out) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            LongVector g = LongVector.fromArray(SPECIES, green, i);
+            LongVector frogs = g.or(LongVector.fromArray(SPECIES, red, i));
+            LongVector empty = frogs.not();
+            for (int w = 0; w * 64 < to.length; w++) {
+                LongVector mask = LongVector.zero(SPECIES);
+                int end = Math.min(to.length, w * 64 + 64);
+                for (int j = w * 64; j < end; j++) {
+                    LongVector legal = frogs.lanewise(VectorOperators.LSHR, from[j])
+                            .and(g.lanewise(VectorOperators.LSHR, over[j]))
+                            .and(empty.lanewise(VectorOperators.LSHR, to[j]))
+                            .and(1L);
+                    mask = mask.or(legal.lanewise(VectorOperators.LSHL, j));
+                }
+                mask.intoArray(out, w * count + i);
+            }
+        }
+        ScalarLaneKernels.jumps(green, red, bound, count, from, over, to, out);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String name() {
+        return "vector x" + SPECIES.length();
+    }
+}
@@ -0,0 +1,215 @@
+package puzzles.common.solver;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Anytime solver for boards too big to solve optimally while the user waits: answers fast, then keeps improving
+ * Runs restarting weighted A*: a greedy best-first pass first, then passes with f = g + w * h for falling weights
+ * down to plain A* at w = 1. Every pass prunes configurations that can't beat the best solution so far, and
+ * re-opens configurations reached by a shorter path, so after each pass the smallest g + h left open is a lower
+ * bound on the optimal length. A solution of length c from weight w also proves the optimum is at least c / w.
+ * After every pass the best solution, both bounds and the gap between them are published as a Stage. The search
+ * ends at the deadline, after the w = 1 pass, or as soon as the bounds meet.
+ * The heuristic must be admissible for the bounds to hold; the solutions are valid either way.
+ * @author Kilian Jakstis
+ */
+public class AnytimeSolver {
+
+    /**
+     * Weights of the passes unless given; infinity is greedy best-first
+     */
+    public static final double[] DEFAULT_WEIGHTS = {Double.POSITIVE_INFINITY, 5, 3, 2, 1.5, 1.25, 1};
+
+    /**
+     * Expansions between deadline checks
+     */
+    private static final int CHECK_EVERY = 256;
+
+    /**
+     * What is known after a pass
+     * @param solution the best solution so far, or null if none has been found
+     * @param upper its length, or Integer.MAX_VALUE without one
+     * @param lower a lower bound on the optimal length
+     * @param weight weight of the pass that ended
+     * @param expanded configurations expanded so far, over every pass
+     * @param nanos time since the solve started
+     * @param optimal true if the solution is proven optimal (or, without one, that there is none)
+     */
+    public record Stage(Solution solution, int upper, int lower, double weight, long expanded, long nanos,
+                        boolean optimal) {
+
+        /**
+         * @return (upper - lower) / upper, 0 once optimal, 1 without a solution
+         */
+        public double gap() {
+            if (this.solution == null) return this.optimal ? 0 : 1;
+            return this.upper == 0 ? 0 : (double) (this.upper - this.lower) / this.upper;
+        }
+
+        /**
+         * @return a one line summary
+         */
+        @Override
+        public String toString() {
+            String weight = Double.isInfinite(this.weight) ? "greedy" : "w=" + this.weight;
+            if (this.solution == null && this.optimal) {
+                return String.format("%s: no solution, %d expanded, %.1f ms", weight, this.expanded, this.nanos / 1e6);
+            }
+            if (this.solution == null) {
+                return String.format("%s: nothing yet, lower bound %d, %d expanded, %.1f ms", weight, this.lower,
+                        this.expanded, this.nanos / 1e6);
+            }
+            return String.format("%s: %d moves, lower bound %d, gap %.1f%%%s, %d expanded, %.1f ms", weight,
+                    this.upper, this.lower, this.gap() * 100, this.optimal ? " (optimal)" : "", this.expanded,
+                    this.nanos / 1e6);
+        }
+    }
+
+    /**
+     * A search node: the configuration, how it was reached, and its costs
+     */
+    private record Node(Configuration config, Node parent, int move, int g, int h, double priority) {
+    }
+
+    private final Heuristic heuristic; // estimates the moves left
+    private final double[] weights; // weight of each pass
+
+    /**
+     * Makes a solver with the default weights
+     * @param heuristic an admissible heuristic
+     */
+    public AnytimeSolver(Heuristic heuristic) {
+        this(heuristic, DEFAULT_WEIGHTS);
+    }
+
+    /**
+     * Makes a solver
+     * @param heuristic an admissible heuristic
+     * @param weights weight of each pass, falling, ending at 1 to prove optimality
+     */
+    public AnytimeSolver(Heuristic heuristic, double[] weights) {
+        this.heuristic = heuristic;
+        this.weights = weights.clone();
+    }
+
+    /**
+     * Solves until the deadline or until the solution is proven optimal
+     * @param start config
+     * @param budget time allowed in milliseconds
+     * @param listener gets a Stage after every pass
+     * @return the last stage
+     * @throws CancellationException if the thread is interrupted
+     */
+    public Stage solve(Configuration start, long budget, Consumer<Stage> listener) {
+        long begin = System.nanoTime();
+        long deadline = begin + TimeUnit.MILLISECONDS.toNanos(budget);
+        Solution best = null;
+        int upper = Integer.MAX_VALUE;
+        int lower = this.heuristic.estimate(start);
+        long[] expanded = new long[1];
+        Stage stage = null;
+        for (double weight : this.weights) {
+            int[] open = new int[]{Integer.MAX_VALUE};
+            Node goal = this.pass(start, weight, upper, deadline, expanded, open);
+            boolean finished = open[0] >= 0;
+            if (goal != null) {
+                best = path(start, goal);
+                upper = goal.g();
+                if (!Double.isInfinite(weight)) lower = Math.max(lower, (int) Math.ceil(upper / weight));
+            }
+            if (finished) {
+                // nothing left open that could do better than upper
+                lower = Math.max(lower, Math.min(upper, open[0]));
+            }
+            boolean optimal = finished && (goal == null || lower >= upper);
+            stage = new Stage(best, upper, Math.min(lower, upper), weight, expanded[0], System.nanoTime() - begin,
+                    optimal || lower >= upper);
+            listener.accept(stage);
+            if (stage.optimal() || !finished) break;
+        }
+        return stage;
+    }
+
+    /**
+     * One weighted A* pass
+     * @param start config
+     * @param weight the heuristic's weight, infinity for greedy
+     * @param upper length of the best solution so far; nothing that can't beat it is kept
+     * @param deadline System.nanoTime() to stop at
+     * @param expanded expansion count, added to
+     * @param open gets the smallest g + h left open when the pass ends (MAX_VALUE if none), -1 if it ran out of time
+     * @return the goal found, or null if there is none shorter than upper
+     */
+    private Node pass(Configuration start, double weight, int upper, long deadline, long[] expanded, int[] open) {
+        PriorityQueue<Node> queue = new PriorityQueue<>((a, b) -> a.priority() != b.priority()
+                ? Double.compare(a.priority(), b.priority()) : Integer.compare(b.g(), a.g()));
+        Map<Long, Integer> best = new HashMap<>();
+        int h0 = this.heuristic.estimate(start);
+        queue.add(new Node(start, null, 0, 0, h0, priority(0, h0, weight)));
+        best.put(start.fingerprint(), 0);
+        Node goal = null;
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            if (node.g() > best.get(node.config().fingerprint())) continue;
+            if (node.g() + node.h() >= upper) continue;
+            if (node.config().isSolution()) {
+                goal = node;
+                break;
+            }
+            if (++expanded[0] % CHECK_EVERY == 0) {
+                if (Thread.currentThread().isInterrupted()) throw new CancellationException("search interrupted");
+                if (System.nanoTime() > deadline) {
+                    open[0] = -1;
+                    return null;
+                }
+            }
+            Configuration config = node.config();
+            for (int move : config.getMoves()) {
+                Configuration child = config.applyMove(move);
+                int g = node.g() + 1;
+                long print = child.fingerprint();
+                Integer known = best.get(print);
+                if (known != null && known <= g) continue;
+                int h = this.heuristic.estimate(child);
+                if (g + h >= upper) continue;
+                best.put(print, g);
+                queue.add(new Node(child, node, move, g, h, priority(g, h, weight)));
+            }
+        }
+        // the lower bound only counts live entries; with a goal its own g + h is among them
+        int min = goal == null ? Integer.MAX_VALUE : goal.g() + goal.h();
+        for (Node node : queue) {
+            if (node.g() == best.get(node.config().fingerprint())) min = Math.min(min, node.g() + node.h());
+        }
+        open[0] = min;
+        return goal;
+    }
+
+    /**
+     * @return the pass's priority for a node; greedy orders by h alone, shorter g breaking ties
+     */
+    private static double priority(int g, int h, double weight) {
+        return Double.isInfinite(weight) ? h * 1e9 + g : g + weight * h;
+    }
+
+    /**
+     * @return the solution ending at a goal node
+     */
+    private static Solution path(Configuration start, Node goal) {
+        List<Integer> moves = new ArrayList<>();
+        for (Node n = goal; n.parent() != null; n = n.parent()) {
+            moves.add(n.move());
+        }
+        int[] packed = new int[moves.size()];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = moves.get(packed.length - 1 - i);
+        }
+        return new Solution(start, packed);
+    }
+}
@@ -0,0 +1,361 @@
+package puzzles.common.solver;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Approximate BFS solver in the style of SPIN's bitstate hashing
+ * The visited set is a bit array where every configuration sets a few bits picked by its 64 bit fingerprint (a
+ * Bloom filter), so a state costs a handful of bits instead of a map entry plus the whole board. The price is a
+ * small chance that a new state looks visited and gets skipped, reported by getOmissionProbability.
+ * Parents are only kept for checkpoint states, one level in every few, in an open addressing table of two longs
+ * a slot kept up to three quarters full, so 21 to 43 bytes a state on those levels instead of a boxed map entry's
+ * 80 or so. A path is recovered by short exact searches from one checkpoint to the next, so solutions are always
+ * valid but may be longer than optimal after omissions.
+ * Only the current and next BFS levels are held as configurations.
+ * @author Kilian Jakstis
+ */
+public class BitstateSolver {
+
+    /**
+     * Bits set per configuration unless given
+     */
+    public static final int DEFAULT_HASHES = 3;
+
+    /**
+     * Levels between checkpoints unless given
+     */
+    public static final int DEFAULT_INTERVAL = 8;
+
+    /**
+     * A frontier configuration and the key of the last checkpoint on its way from the start
+     */
+    private record Entry(Configuration config, long checkpoint) {
+    }
+
+    /**
+     * Open addressing map from a checkpoint's key to the previous checkpoint's key
+     */
+    private static final class Checkpoints {
+        private long[] keys = new long[1 << 10];
+        private long[] parents = new long[this.keys.length];
+        private int size = 0;
+
+        /**
+         * Adds a checkpoint; each is only added once, since the filter only lets new states through
+         */
+        private void put(long key, long parent) {
+            if (this.size * 4 >= this.keys.length * 3) this.grow();
+            int slot = this.find(key);
+            if (this.keys[slot] == 0) this.size++;
+            this.keys[slot] = key;
+            this.parents[slot] = parent;
+        }
+
+        /**
+         * @return the previous checkpoint's key
+         */
+        private long get(long key) {
+            return this.parents[this.find(key)];
+        }
+
+        /**
+         * @return slot holding the key, or the empty slot where it would go
+         */
+        private int find(long key) {
+            int mask = this.keys.length - 1;
+            int slot = (int) key & mask;
+            while (this.keys[slot] != 0 && this.keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Doubles the table
+         */
+        private void grow() {
+            long[] keys = this.keys;
+            long[] parents = this.parents;
+            this.keys = new long[keys.length * 2];
+            this.parents = new long[this.keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == 0) continue;
+                int slot = this.find(keys[i]);
+                this.keys[slot] = keys[i];
+                this.parents[slot] = parents[i];
+            }
+        }
+    }
+
+    /**
+     * The filter, its size in bits and the number of bits per configuration
+     */
+    private final long[] bits;
+    private final long size;
+    private final int hashes;
+
+    /**
+     * Levels between checkpoints
+     */
+    private final int interval;
+
+    /**
+     * Stats of the last search
+     */
+    private long stored = 0;
+    private long generated = 0;
+    private long solved = 0;
+    private int maxDepth = 0;
+    private double expectedOmissions = 0;
+
+    /**
+     * Makes a solver with the default number of hashes and checkpoint interval
+     * @param bits size of the filter in bits
+     */
+    public BitstateSolver(long bits) {
+        this(bits, DEFAULT_HASHES, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Makes a solver
+     * @param bits size of the filter in bits, rounded up to a multiple of 64
+     * @param hashes bits set per configuration
+     * @param interval levels between checkpoints; larger keeps fewer parents but makes path recovery search further
+     */
+    public BitstateSolver(long bits, int hashes, int interval) {
+        if (bits < 64 || (bits + 63) >>> 6 > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("filter size out of range: " + bits);
+        }
+        if (hashes < 1 || interval < 1) {
+            throw new IllegalArgumentException("hashes and interval must be positive");
+        }
+        this.bits = new long[(int) ((bits + 63) >>> 6)];
+        this.size = (long) this.bits.length << 6;
+        this.hashes = hashes;
+        this.interval = interval;
+    }
+
+    /**
+     * Finds a solution from start
+     * @param start config
+     * @return the Solution, or null if none was found; with omissions that is not proof there is none
+     */
+    public Solution solve(Configuration start) {
+        Checkpoints checkpoints = new Checkpoints();
+        Entry end = this.search(start, checkpoints, true);
+        if (end == null) return null;
+        // checkpoint chain from the start to the solution's last checkpoint
+        long startKey = key(start.fingerprint());
+        ArrayDeque<Long> chain = new ArrayDeque<>();
+        for (long c = end.checkpoint(); c != startKey; c = checkpoints.get(c)) {
+            chain.push(c);
+        }
+        List<Integer> moves = new ArrayList<>();
+        Configuration current = start;
+        for (long target : chain) {
+            current = segment(current, c -> key(c.fingerprint()) == target, this.interval, moves);
+        }
+        int rest = this.maxDepth - chain.size() * this.interval;
+        segment(current, Configuration::isSolution, rest, moves);
+        return new Solution(start, moves.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Sweeps every configuration reachable from start, without stopping at solutions
+     * Use getUniqueConfigs, getSolvedConfigs and getMaxDepth for the results
+     * @param start config
+     * @return number of configurations reached
+     */
+    public long explore(Configuration start) {
+        this.search(start, null, false);
+        return this.stored;
+    }
+
+    /**
+     * Level by level BFS over the bit array
+     * @param start config
+     * @param checkpoints filled with the checkpoint parents, or null to keep none
+     * @param stop stop at the first solution
+     * @return the first solution's entry if stopping, else null
+     */
+    private Entry search(Configuration start, Checkpoints checkpoints, boolean stop) {
+        Arrays.fill(this.bits, 0);
+        this.stored = 0;
+        this.generated = 1;
+        this.solved = 0;
+        this.maxDepth = 0;
+        this.expectedOmissions = 0;
+        long startPrint = start.fingerprint();
+        this.add(startPrint);
+        Entry first = new Entry(start, key(startPrint));
+        if (start.isSolution()) {
+            this.solved++;
+            if (stop) return first;
+        }
+        ArrayDeque<Entry> level = new ArrayDeque<>();
+        level.add(first);
+        int depth = 0;
+        while (!level.isEmpty()) {
+            ArrayDeque<Entry> next = new ArrayDeque<>();
+            boolean checkpoint = checkpoints != null && (depth + 1) % this.interval == 0;
+            while (!level.isEmpty()) {
+                Entry entry = level.remove();
+                for (Configuration config : entry.config().getNeighbors()) {
+                    this.generated++;
+                    long print = config.fingerprint();
+                    if (!this.add(print)) continue;
+                    long last = entry.checkpoint();
+                    if (checkpoint) {
+                        checkpoints.put(key(print), last);
+                        last = key(print);
+                    }
+                    Entry child = new Entry(config, last);
+                    if (config.isSolution()) {
+                        this.solved++;
+                        if (stop) {
+                            this.maxDepth = depth + 1;
+                            return child;
+                        }
+                    }
+                    next.add(child);
+                }
+            }
+            level = next;
+            if (!level.isEmpty()) depth++;
+        }
+        this.maxDepth = depth;
+        return null;
+    }
+
+    /**
+     * @return a fingerprint as a checkpoint key; 0 marks empty slots
+     */
+    private static long key(long print) {
+        return print == 0 ? 1 : print;
+    }
+
+    /**
+     * Sets the configuration's bits
+     * @param print its fingerprint
+     * @return true if any bit was clear, i.e. the configuration is new
+     */
+    private boolean add(long print) {
+        // double hashing: bit i is h1 + i * h2, with h2 odd so the bits differ
+        long h2 = Fingerprints.mix(print ^ Fingerprints.SEED) | 1;
+        boolean added = false;
+        for (int i = 0; i < this.hashes; i++) {
+            long bit = Long.remainderUnsigned(print + i * h2, this.size);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((this.bits[word] & mask) == 0) {
+                this.bits[word] |= mask;
+                added = true;
+            }
+        }
+        if (added) {
+            // a new state had this chance of being mistaken for a visited one
+            this.expectedOmissions += this.getOmissionProbability();
+            this.stored++;
+        }
+        return added;
+    }
+
+    /**
+     * Exact bounded BFS between two points of a recovered path
+     * @param from config to start at
+     * @param target what to reach
+     * @param bound most moves to search
+     * @param moves the moves found are appended here
+     * @return the configuration reached
+     */
+    private static Configuration segment(Configuration from, Predicate<Configuration> target, int bound,
+                                         List<Integer> moves) {
+        // keyed on fingerprints like the main search; equals only compares the int hashCode
+        Map<Long, Configuration> parents = new HashMap<>();
+        parents.put(from.fingerprint(), null);
+        ArrayDeque<Configuration> level = new ArrayDeque<>();
+        level.add(from);
+        Configuration found = target.test(from) ? from : null;
+        for (int depth = 0; found == null && depth < bound && !level.isEmpty(); depth++) {
+            ArrayDeque<Configuration> next = new ArrayDeque<>();
+            while (found == null && !level.isEmpty()) {
+                Configuration current = level.remove();
+                for (Configuration config : current.getNeighbors()) {
+                    long print = config.fingerprint();
+                    if (parents.containsKey(print)) continue;
+                    parents.put(print, current);
+                    if (target.test(config)) {
+                        found = config;
+                        break;
+                    }
+                    next.add(config);
+                }
+            }
+            level = next;
+        }
+        if (found == null) {
+            throw new IllegalStateException("checkpoint not reachable within " + bound + " moves");
+        }
+        int at = moves.size();
+        Configuration c = found;
+        Configuration parent = parents.get(c.fingerprint());
+        while (parent != null) {
+            moves.add(at, parent.moveTo(c));
+            c = parent;
+            parent = parents.get(c.fingerprint());
+        }
+        return found;
+    }
+
+    /**
+     * Chance that a configuration not yet seen is mistaken for a visited one at the filter's current fill,
+     * (1 - e^(-kn/m))^k for k bits per state, n states and m bits
+     * @return the probability
+     */
+    public double getOmissionProbability() {
+        return Math.pow(1 - Math.exp(-(double) this.hashes * this.stored / this.size), this.hashes);
+    }
+
+    /**
+     * @return estimated number of states skipped in the last search, the omission probability summed over
+     * every state stored
+     */
+    public double getExpectedOmissions() {
+        return this.expectedOmissions;
+    }
+
+    /**
+     * @return number of configurations stored in the filter
+     */
+    public long getUniqueConfigs() {
+        return this.stored;
+    }
+
+    /**
+     * @return number of configurations generated, including repeats
+     */
+    public long getTotalConfigs() {
+        return this.generated;
+    }
+
+    /**
+     * @return number of solved configurations reached
+     */
+    public long getSolvedConfigs() {
+        return this.solved;
+    }
+
+    /**
+     * @return depth of the solution found, or of the deepest level reached by explore
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * @return size of the filter in bytes
+     */
+    public long getBytes() {
+        return this.size >>> 3;
+    }
+}
@@ -32,6 +32,84 @@ public interface Configuration {
      */
     int hashCode();
 
+    /**
+     * A 64 bit hash for solvers that keep hashes instead of configurations, where the int hashCode would collide
+     * far too often. Defaults to FNV-1a over encode(); puzzles override it with a cheaper hash of their board
+     * @return the fingerprint
+     */
+    default long fingerprint() {
+        return Fingerprints.of(this.encode());
+    }
+
+    /**
+     * Every move applyMove accepts from this configuration, in the order getNeighbors lists the neighbors
+     * @return the packed moves
+     */
+    default int[] getMoves() {
+        return this.getNeighbors().stream().mapToInt(this::moveTo).toArray();
+    }
+
+    /**
+     * Fingerprints of the configurations the moves lead to, without building them. Puzzles whose fingerprint is
+     * a sum over cells override this to patch only the cells a move changes
+     * @param moves packed moves from getMoves
+     * @return fingerprint after each move
+     */
+    default long[] fingerprintsAfter(int[] moves) {
+        long[] prints = new long[moves.length];
+        for (int i = 0; i < moves.length; i++) {
+            prints[i] = this.applyMove(moves[i]).fingerprint();
+        }
+        return prints;
+    }
+
+    /**
+     * Pack the move that turns this configuration into one of its neighbors into an int
+     * @param neighbor a configuration one move away
+     * @return the packed move, understood by applyMove
+     */
+    int moveTo(Configuration neighbor);
+
+    /**
+     * Apply a packed move made by moveTo
+     * @param move the packed move
+     * @return the configuration after the move
+     */
+    Configuration applyMove(int move);
+
+    /**
+     * Pack the configuration into a compact byte encoding; the puzzle's byte[] constructor reverses it
+     * @return the packed bytes
+     */
+    byte[] encode();
+
+    /**
+     * Can every move be undone by another move? Then anything reachable from a solvable configuration is solvable
+     * too, which lets solvers learn about states off the solution path
+     * @return true if moves are reversible; false by default
+     */
+    default boolean isReversible() {
+        return false;
+    }
+
+    /**
+     * A representative of every configuration that only differs from this one in ways that can't change the
+     * solution, such as the letters of the cars. Caches key on its encoding
+     * @return the canonical configuration; by default this one
+     */
+    default Configuration canonical() {
+        return this;
+    }
+
+    /**
+     * Maps moves made on canonical() back onto this configuration
+     * @param moves packed moves of a path from canonical()
+     * @return the same path as moves of this configuration
+     */
+    default int[] fromCanonical(int[] moves) {
+        return moves;
+    }
+
     /**
      * Make a string representation of the configuration
      * @return the string
@@ -0,0 +1,251 @@
+package puzzles.common.solver;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * A configuration stored as its parent plus the one move that leads to it, instead of a whole board
+ * Wrap a start configuration and hand it to any solver: neighbors come out as small delta objects holding the
+ * parent, the packed move, the fingerprint (computed by fingerprintsAfter without building the board) and how
+ * far they are from the last full snapshot. Every SNAPSHOT_INTERVAL moves a neighbor keeps its board so rebuilds
+ * never replay more than that many moves.
+ * The board is only built for the goal test, expansion and printing, and is cached from the goal test until the
+ * configuration has been expanded, which is the order Solver uses them in. Rebuilt boards are also kept per depth
+ * below the snapshot, so BFS, which expands siblings and cousins one after another, rebuilds a board with one
+ * move from its parent's instead of replaying the whole chain.
+ * A search's deltas share those boards, so one search must not use them from several threads.
+ * Equality is fingerprint equality, the same hash based equality the puzzles use but over 64 bits.
+ * @author Kilian Jakstis
+ */
+public class DeltaConfiguration implements Configuration {
+
+    /**
+     * Moves between full snapshots unless given
+     */
+    public static final int SNAPSHOT_INTERVAL = 8;
+
+    /**
+     * The configuration this one was made from, null for snapshots
+     */
+    private final DeltaConfiguration parent;
+
+    /**
+     * The move from the parent
+     */
+    private final int move;
+
+    /**
+     * The fingerprint of the board this stands for
+     */
+    private final long fingerprint;
+
+    /**
+     * Moves since the last snapshot, 0 for snapshots
+     */
+    private final int depth;
+
+    /**
+     * Settings and rebuilt boards shared by the whole search
+     */
+    private final Context context;
+
+    /**
+     * The full board: always set for snapshots, otherwise only between the goal test and expansion
+     */
+    private Configuration board;
+
+    /**
+     * What the deltas of one search share: the snapshot interval, and the last board rebuilt at each depth below a
+     * snapshot with the delta it belongs to
+     */
+    private static final class Context {
+        private final int interval;
+        private final DeltaConfiguration[] owners;
+        private final Configuration[] boards;
+
+        /**
+         * @param interval moves between full snapshots
+         */
+        private Context(int interval) {
+            this.interval = interval;
+            this.owners = new DeltaConfiguration[interval];
+            this.boards = new Configuration[interval];
+        }
+    }
+
+    /**
+     * Wraps a start configuration
+     * @param start config
+     */
+    public DeltaConfiguration(Configuration start) {
+        this(start, SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Wraps a start configuration
+     * @param start config
+     * @param interval moves between full snapshots; larger saves memory but rebuilds take longer
+     */
+    public DeltaConfiguration(Configuration start, int interval) {
+        if (interval < 1) throw new IllegalArgumentException("interval must be positive");
+        this.parent = null;
+        this.move = 0;
+        this.fingerprint = start.fingerprint();
+        this.depth = 0;
+        this.context = new Context(interval);
+        this.board = start;
+    }
+
+    /**
+     * Makes a neighbor
+     * @param parent the configuration it came from, which has its board built
+     * @param move the move from the parent
+     * @param fingerprint fingerprint after the move
+     */
+    private DeltaConfiguration(DeltaConfiguration parent, int move, long fingerprint) {
+        this.context = parent.context;
+        this.move = move;
+        this.fingerprint = fingerprint;
+        if (parent.depth + 1 >= this.context.interval) {
+            this.parent = null;
+            this.depth = 0;
+            this.board = parent.board.applyMove(move);
+        } else {
+            this.parent = parent;
+            this.depth = parent.depth + 1;
+        }
+    }
+
+    /**
+     * Builds the board from the nearest ancestor that has one kept, replaying at most interval moves
+     * @return the full configuration
+     */
+    public Configuration materialize() {
+        if (this.board != null) return this.board;
+        Context c = this.context;
+        if (c.owners[this.depth] == this) return c.boards[this.depth];
+        Configuration full = this.parent.materialize().applyMove(this.move);
+        c.owners[this.depth] = this;
+        c.boards[this.depth] = full;
+        return full;
+    }
+
+    /**
+     * Is the configuration a solution? Keeps the board for the expansion that usually follows
+     * @return T or F
+     */
+    @Override
+    public boolean isSolution() {
+        if (this.board == null) {
+            this.board = this.materialize();
+        }
+        return this.board.isSolution();
+    }
+
+    /**
+     * Makes the neighbors as deltas, then drops the board unless this is a snapshot
+     * @return the neighbors
+     */
+    @Override
+    public Collection<Configuration> getNeighbors() {
+        Configuration full = this.materialize();
+        int[] moves = full.getMoves();
+        long[] prints = full.fingerprintsAfter(moves);
+        // the children need the board while they are made, in case one of them is a snapshot
+        this.board = full;
+        ArrayList<Configuration> neighbors = new ArrayList<>(moves.length);
+        for (int i = 0; i < moves.length; i++) {
+            neighbors.add(new DeltaConfiguration(this, moves[i], prints[i]));
+        }
+        if (this.parent != null) {
+            this.board = null;
+        }
+        return neighbors;
+    }
+
+    /**
+     * @return the moves of the full board
+     */
+    @Override
+    public int[] getMoves() {
+        return this.materialize().getMoves();
+    }
+
+    /**
+     * @param moves packed moves
+     * @return fingerprints of the full board after each move
+     */
+    @Override
+    public long[] fingerprintsAfter(int[] moves) {
+        return this.materialize().fingerprintsAfter(moves);
+    }
+
+    /**
+     * Equal if the fingerprints are
+     * @param other the other config in question
+     * @return true if they stand for the same board
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof DeltaConfiguration o && this.fingerprint == o.fingerprint;
+    }
+
+    /**
+     * @return the fingerprint folded to an int
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.fingerprint);
+    }
+
+    /**
+     * @return the fingerprint worked out when this was generated
+     */
+    @Override
+    public long fingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * Reads the move straight off a child made by getNeighbors; anything else goes through the full boards
+     * @param neighbor a configuration one move away
+     * @return the packed move
+     */
+    @Override
+    public int moveTo(Configuration neighbor) {
+        if (neighbor instanceof DeltaConfiguration d && d.parent == this) {
+            return d.move;
+        }
+        Configuration other = neighbor instanceof DeltaConfiguration d ? d.materialize() : neighbor;
+        return this.materialize().moveTo(other);
+    }
+
+    /**
+     * @param move the packed move
+     * @return the configuration after the move, as a delta
+     */
+    @Override
+    public DeltaConfiguration applyMove(int move) {
+        Configuration full = this.materialize();
+        Configuration saved = this.board;
+        this.board = full;
+        DeltaConfiguration child = new DeltaConfiguration(this, move, full.fingerprintsAfter(new int[]{move})[0]);
+        this.board = saved;
+        return child;
+    }
+
+    /**
+     * @return the full board's encoding
+     */
+    @Override
+    public byte[] encode() {
+        return this.materialize().encode();
+    }
+
+    /**
+     * @return the full board as text
+     */
+    @Override
+    public String toString() {
+        return this.materialize().toString();
+    }
+}
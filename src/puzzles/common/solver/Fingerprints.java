@@ -0,0 +1,75 @@
+package puzzles.common.solver;
+import java.util.Arrays;
+
+/**
+ * Helpers for 64 bit configuration fingerprints
+ * @author Kilian Jakstis
+ */
+public final class Fingerprints {
+
+    /**
+     * Odd multiplier for folding board cells into a fingerprint
+     */
+    public static final long SEED = 0x9E3779B97F4A7C15L;
+
+    /**
+     * SEED^0, SEED^1, ... grown on demand; board fingerprints weight cell k of n by SEED^(n - k)
+     */
+    private static volatile long[] powers = {1};
+
+    /**
+     * Static helpers only
+     */
+    private Fingerprints() {
+    }
+
+    /**
+     * @param n exponent
+     * @return SEED^n, wrapping around like the fingerprint arithmetic does
+     */
+    public static long power(int n) {
+        long[] p = powers;
+        if (n >= p.length) {
+            p = grow(n);
+        }
+        return p[n];
+    }
+
+    /**
+     * Makes the power table hold at least SEED^n
+     */
+    private static synchronized long[] grow(int n) {
+        long[] p = powers;
+        if (n < p.length) return p;
+        long[] bigger = Arrays.copyOf(p, Math.max(n + 1, 2 * p.length));
+        for (int i = p.length; i < bigger.length; i++) {
+            bigger[i] = bigger[i - 1] * SEED;
+        }
+        powers = bigger;
+        return bigger;
+    }
+
+    /**
+     * FNV-1a over a configuration's packed bytes, mixed
+     * @param packed bytes from Configuration.encode
+     * @return the hash
+     */
+    public static long of(byte[] packed) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : packed) {
+            h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Spreads the bits of a raw hash so that every output bit depends on every input bit (splitmix64 finalizer)
+     * @param h raw hash
+     * @return the mixed hash
+     */
+    public static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,149 @@
+package puzzles.common.solver;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * BFS solver for reversible puzzles that only keeps the last few layers, in the style of Korf's frontier search
+ * Because every move can be undone, the neighbors of a layer lie in the layer before it, the layer itself or the
+ * next one, so the previous, current and next layers are all the duplicate detection a search needs. Nothing
+ * else is stored, so memory is bounded by the widest layers instead of everything reached.
+ * Without parents the path is rebuilt by divide and conquer: once the goal and its depth d are known, a search
+ * from the start towards the goal carries, for every state past layer d / 2, the state it came through on that
+ * middle layer (its relay). The goal's relay splits the path into two halves that are solved the same way.
+ * That costs a few extra searches, each no deeper than the first.
+ * @author Kilian Jakstis
+ */
+public class FrontierSolver {
+
+    /**
+     * A frontier configuration and its ancestor on the relay layer, null until it gets that deep
+     */
+    private record Node(Configuration config, Configuration relay) {
+    }
+
+    /**
+     * Stats of the last solve
+     */
+    private long expanded = 0;
+    private long generated = 0;
+    private int searches = 0;
+    private int widest = 0;
+
+    /**
+     * Finds the shortest solution
+     * @param start config; its puzzle must be reversible
+     * @return the Solution, or null if there is none
+     * @throws IllegalArgumentException if the puzzle's moves can't all be undone
+     */
+    public Solution solve(Configuration start) {
+        if (!start.isReversible()) {
+            throw new IllegalArgumentException("frontier search needs a reversible puzzle");
+        }
+        this.expanded = 0;
+        this.generated = 0;
+        this.searches = 0;
+        this.widest = 0;
+        // find the goal and its depth first, then split the path up
+        int[] depth = new int[1];
+        Node goal = this.search(start, Configuration::isSolution, -1, depth);
+        if (goal == null) return null;
+        int[] moves = new int[depth[0]];
+        this.path(start, goal.config(), depth[0], moves, 0);
+        return new Solution(start, moves);
+    }
+
+    /**
+     * Fills in the moves of a shortest path between two configurations a known distance apart
+     * @param from config
+     * @param to config
+     * @param distance moves between them
+     * @param moves where the path goes
+     * @param at index of the path's first move in moves
+     */
+    private void path(Configuration from, Configuration to, int distance, int[] moves, int at) {
+        if (distance == 0) return;
+        if (distance == 1) {
+            moves[at] = from.moveTo(to);
+            return;
+        }
+        int half = distance / 2;
+        long target = to.fingerprint();
+        int[] depth = new int[1];
+        Node end = this.search(from, c -> c.fingerprint() == target, half, depth);
+        if (end == null || depth[0] != distance) {
+            throw new IllegalStateException("lost the path between two relays");
+        }
+        this.path(from, end.relay(), half, moves, at);
+        this.path(end.relay(), to, distance - half, moves, at + half);
+    }
+
+    /**
+     * Layered BFS that keeps only the previous, current and next layers
+     * @param start config
+     * @param target what to stop at
+     * @param relayDepth layer whose states become relays, or -1 for none
+     * @param depth gets the depth of the node returned
+     * @return the first node that meets the target, or null if none is reachable
+     */
+    private Node search(Configuration start, Predicate<Configuration> target, int relayDepth, int[] depth) {
+        this.searches++;
+        Node first = new Node(start, relayDepth == 0 ? start : null);
+        depth[0] = 0;
+        if (target.test(start)) return first;
+        Set<Long> previous = new HashSet<>();
+        Map<Long, Node> current = new HashMap<>();
+        current.put(start.fingerprint(), first);
+        while (!current.isEmpty()) {
+            Map<Long, Node> next = new HashMap<>();
+            boolean relays = depth[0] + 1 == relayDepth;
+            for (Node node : current.values()) {
+                this.expanded++;
+                for (Configuration config : node.config().getNeighbors()) {
+                    this.generated++;
+                    long print = config.fingerprint();
+                    if (previous.contains(print) || current.containsKey(print) || next.containsKey(print)) continue;
+                    Node child = new Node(config, relays ? config : node.relay());
+                    if (target.test(config)) {
+                        depth[0]++;
+                        return child;
+                    }
+                    next.put(print, child);
+                }
+            }
+            this.widest = Math.max(this.widest, previous.size() + current.size() + next.size());
+            // only the fingerprints are needed from here on, let the configurations go
+            previous = new HashSet<>(current.keySet());
+            current = next;
+            depth[0]++;
+        }
+        return null;
+    }
+
+    /**
+     * @return number of configurations expanded by the last solve, over all its searches
+     */
+    public long getExpanded() {
+        return this.expanded;
+    }
+
+    /**
+     * @return number of configurations generated by the last solve, including repeats
+     */
+    public long getTotalConfigs() {
+        return this.generated;
+    }
+
+    /**
+     * @return number of searches the last solve took, the first one plus the path rebuilding
+     */
+    public int getSearches() {
+        return this.searches;
+    }
+
+    /**
+     * @return most configurations held at once by the last solve, over its three layers
+     */
+    public int getWidest() {
+        return this.widest;
+    }
+}
@@ -0,0 +1,266 @@
+package puzzles.common.solver;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hash-distributed parallel A* (HDA*) solver
+ * Every configuration is owned by the worker picked by its hash. Each worker keeps a private visited table and
+ * open list, so no map is shared between threads. Generated configurations are batched and handed to their
+ * owner through a lock-free mailbox. With Heuristic.ZERO this is a parallel breadth first search.
+ *
+ * Termination uses a global count of outstanding configurations (in mailboxes, open lists or outgoing batches).
+ * A worker adds the children it created before handing them over and only then subtracts the configurations it
+ * finished, so the count can't reach zero while work remains anywhere. When it does reach zero the best goal
+ * found is optimal: nodes are re-opened when reached by a shorter path and only pruned when their estimated
+ * total can't beat the best goal found so far.
+ * @author Kilian Jakstis
+ */
+public class HashDistributedSolver {
+    private static final int BATCH_SIZE = 128; // configurations per mailbox batch
+    private final int workerCount; // number of worker threads
+    private final Heuristic heuristic; // admissible estimate of the moves left
+
+    /** state of the search in progress */
+    private Worker[] workers;
+    private final AtomicLong outstanding = new AtomicLong();
+    private volatile int bestCost;
+    private volatile Node bestGoal;
+    private final Object goalLock = new Object(); // guards updates of bestCost and bestGoal
+    private final AtomicLong expanded = new AtomicLong();
+
+    /**
+     * Makes a breadth first solver
+     * @param workers number of worker threads
+     */
+    public HashDistributedSolver(int workers) {
+        this(workers, Heuristic.ZERO);
+    }
+
+    /**
+     * Makes a solver
+     * @param workers number of worker threads
+     * @param heuristic an admissible heuristic
+     */
+    public HashDistributedSolver(int workers, Heuristic heuristic) {
+        this.workerCount = workers;
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * A configuration reached during the search, with the configuration it was reached from
+     */
+    private static final class Node implements Comparable<Node> {
+        final Configuration config; // the configuration
+        final Configuration parent; // predecessor on the best known path, null for the start
+        final int g; // moves from the start
+        final int f; // g plus the heuristic estimate
+
+        Node(Configuration config, Configuration parent, int g, int f) {
+            this.config = config;
+            this.parent = parent;
+            this.g = g;
+            this.f = f;
+        }
+
+        /**
+         * Orders by estimated total, preferring deeper nodes on ties
+         */
+        @Override
+        public int compareTo(Node o) {
+            return this.f != o.f ? Integer.compare(this.f, o.f) : Integer.compare(o.g, this.g);
+        }
+    }
+
+    /**
+     * Finds the shortest solution from a start Configuration
+     * @param start config
+     * @return the Solution, or null if there is none
+     */
+    public synchronized Solution solve(Configuration start) {
+        this.workers = new Worker[this.workerCount];
+        for (int i = 0; i < this.workerCount; i++) {
+            this.workers[i] = new Worker(i);
+        }
+        this.bestCost = Integer.MAX_VALUE;
+        this.bestGoal = null;
+        this.expanded.set(0);
+        this.outstanding.set(1);
+        this.workers[this.ownerOf(start)].mailbox.add(new Node[]{new Node(start, null, 0, this.heuristic.estimate(start))});
+        Thread[] threads = new Thread[this.workerCount];
+        for (int i = 0; i < this.workerCount; i++) {
+            threads[i] = new Thread(this.workers[i], "hda-worker-" + i);
+            threads[i].start();
+        }
+        try {
+            for (Thread t : threads) {
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread t : threads) {
+                t.interrupt();
+            }
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        Solution solution = null;
+        if (this.bestGoal != null) {
+            // follow the parents back through their owners' tables
+            ArrayList<Configuration> path = new ArrayList<>();
+            for (Configuration c = this.bestGoal.config; c != null; c = this.workers[this.ownerOf(c)].visited.get(c).parent) {
+                path.add(c);
+            }
+            int[] moves = new int[path.size() - 1];
+            for (int i = 0; i < moves.length; i++) {
+                moves[i] = path.get(path.size() - 1 - i).moveTo(path.get(path.size() - 2 - i));
+            }
+            solution = new Solution(start, moves);
+        }
+        this.workers = null;
+        this.bestGoal = null;
+        return solution;
+    }
+
+    /**
+     * @return the index of the worker that owns a configuration
+     */
+    private int ownerOf(Configuration config) {
+        int h = config.hashCode() * 0x9E3779B9;
+        return ((h ^ (h >>> 16)) & 0x7FFFFFFF) % this.workerCount;
+    }
+
+    /**
+     * Records a goal if it beats the best one so far
+     */
+    private void offerGoal(Node goal) {
+        synchronized (this.goalLock) {
+            if (goal.g < this.bestCost) {
+                this.bestCost = goal.g;
+                this.bestGoal = goal;
+            }
+        }
+    }
+
+    /**
+     * @return the number of configurations expanded in the last search
+     */
+    public long getExpanded() {
+        return this.expanded.get();
+    }
+
+    /**
+     * One search thread and the part of the state space it owns
+     */
+    private final class Worker implements Runnable {
+        final int id; // index in the workers array
+        final HashMap<Configuration, Node> visited = new HashMap<>(); // best node for every owned configuration
+        final PriorityQueue<Node> open = new PriorityQueue<>(); // owned nodes waiting to be expanded
+        final ConcurrentLinkedQueue<Node[]> mailbox = new ConcurrentLinkedQueue<>(); // batches from other workers
+        final Node[][] outgoing = new Node[workerCount][BATCH_SIZE]; // batches being filled, per owner
+        final int[] outgoingCount = new int[workerCount];
+        long created = 0; // configurations created but not yet added to the global count
+        long finished = 0; // configurations finished but not yet subtracted from the global count
+
+        Worker(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Expands owned nodes and exchanges batches until no work is left anywhere
+         */
+        @Override
+        public void run() {
+            long expandedHere = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                Node[] batch = this.mailbox.poll();
+                while (batch != null) {
+                    for (Node n : batch) {
+                        if (n != null) this.receive(n);
+                    }
+                    batch = this.mailbox.poll();
+                }
+                Node n = this.open.poll();
+                if (n == null) {
+                    this.flush();
+                    if (outstanding.get() == 0) break;
+                    if (this.mailbox.isEmpty()) LockSupport.parkNanos(20_000);
+                    continue;
+                }
+                if (n.f >= bestCost || this.visited.get(n.config) != n) {
+                    // can't beat the best goal, or a shorter path to it was found since it was queued
+                    this.finished++;
+                    continue;
+                }
+                if (n.config.isSolution()) {
+                    offerGoal(n);
+                    this.finished++;
+                    continue;
+                }
+                expandedHere++;
+                for (Configuration child : n.config.getNeighbors()) {
+                    int g = n.g + 1;
+                    int f = g + heuristic.estimate(child);
+                    if (f >= bestCost) continue;
+                    this.created++;
+                    this.send(ownerOf(child), new Node(child, n.config, g, f));
+                }
+                this.finished++;
+                if (this.finished >= BATCH_SIZE) this.flush();
+            }
+            expanded.addAndGet(expandedHere);
+        }
+
+        /**
+         * Takes ownership of a node, keeping it only if it is the shortest path to its configuration so far
+         */
+        private void receive(Node n) {
+            Node known = this.visited.get(n.config);
+            if (known == null || n.g < known.g) {
+                this.visited.put(n.config, n);
+                this.open.add(n);
+            } else {
+                this.finished++;
+            }
+        }
+
+        /**
+         * Hands a node to its owner, directly if that is this worker
+         */
+        private void send(int owner, Node n) {
+            if (owner == this.id) {
+                this.receive(n);
+                return;
+            }
+            Node[] out = this.outgoing[owner];
+            out[this.outgoingCount[owner]++] = n;
+            if (this.outgoingCount[owner] == BATCH_SIZE) {
+                outstanding.addAndGet(this.created);
+                this.created = 0;
+                workers[owner].mailbox.add(out);
+                this.outgoing[owner] = new Node[BATCH_SIZE];
+                this.outgoingCount[owner] = 0;
+            }
+        }
+
+        /**
+         * Sends every partial batch and settles this worker's counts with the global count: creations are
+         * added before the batches are sent and finished nodes subtracted after
+         */
+        private void flush() {
+            outstanding.addAndGet(this.created);
+            this.created = 0;
+            for (int owner = 0; owner < workerCount; owner++) {
+                if (this.outgoingCount[owner] > 0) {
+                    workers[owner].mailbox.add(Arrays.copyOf(this.outgoing[owner], this.outgoingCount[owner]));
+                    this.outgoingCount[owner] = 0;
+                }
+            }
+            outstanding.addAndGet(-this.finished);
+            this.finished = 0;
+        }
+    }
+}
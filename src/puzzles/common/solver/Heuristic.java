@@ -0,0 +1,22 @@
+package puzzles.common.solver;
+
+/**
+ * An estimate of the number of moves left to solve a configuration
+ * Heuristics given to the optimal solvers must be admissible: never more than the true number of moves.
+ * @author Kilian Jakstis
+ */
+@FunctionalInterface
+public interface Heuristic {
+
+    /**
+     * The heuristic that knows nothing; searches using it behave like BFS
+     */
+    Heuristic ZERO = config -> 0;
+
+    /**
+     * Estimate the moves left
+     * @param config the configuration
+     * @return a lower bound on the number of moves to a solution
+     */
+    int estimate(Configuration config);
+}
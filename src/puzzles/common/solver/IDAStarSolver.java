@@ -0,0 +1,178 @@
+package puzzles.common.solver;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Iterative-deepening A* solver for state spaces too big for the visited map kept by Solver
+ * Memory is linear in the solution depth: only the current path is kept, and it doubles as the cycle check.
+ * An optional small transposition table skips configurations already searched at a lower depth in the same
+ * iteration. With an admissible heuristic the solutions are optimal.
+ * The deepening stops when an iteration searched every reachable configuration without finding a solution,
+ * which it can only tell when they all fit in the table, or once the bound passes the maximum it was given.
+ * @author Kilian Jakstis
+ */
+public class IDAStarSolver {
+    private static final int FOUND = -1; // search result meaning a solution is on the path
+    private static final int INFINITY = Integer.MAX_VALUE; // search result meaning nothing is left below
+
+    private final Heuristic heuristic; // estimates the moves left
+    private final int tableSize; // transposition table capacity, 0 for none
+    private final int maxBound; // largest cost bound tried
+    private final ArrayList<Configuration> path = new ArrayList<>(); // the current search path
+    private final HashSet<Configuration> onPath = new HashSet<>(); // the same configurations, for cycle checks
+    private Map<Configuration, Integer> table; // lowest depth each configuration was searched at this iteration
+    private boolean evicted; // whether the table dropped a configuration this iteration
+    private HashSet<Configuration> cutOff; // configurations cut off by the bound this iteration, null past tableSize
+    private boolean exhausted; // whether the last search stopped at the maximum bound
+    private long nodes; // configurations searched in the current iteration
+    private long[] nodesPerIteration = new long[0]; // configurations searched in each finished iteration
+
+    /**
+     * Makes a solver without a transposition table
+     * @param heuristic an admissible heuristic
+     */
+    public IDAStarSolver(Heuristic heuristic) {
+        this(heuristic, 0);
+    }
+
+    /**
+     * Makes a solver
+     * @param heuristic an admissible heuristic
+     * @param tableSize how many configurations the transposition table holds (least recently used are dropped),
+     *                  or 0 for no table
+     */
+    public IDAStarSolver(Heuristic heuristic, int tableSize) {
+        this(heuristic, tableSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Makes a solver that gives up past a cost bound
+     * @param heuristic an admissible heuristic
+     * @param tableSize how many configurations the transposition table holds (least recently used are dropped),
+     *                  or 0 for no table
+     * @param maxBound largest cost bound to try; a solution longer than this isn't found
+     */
+    public IDAStarSolver(Heuristic heuristic, int tableSize, int maxBound) {
+        this.heuristic = heuristic;
+        this.tableSize = tableSize;
+        this.maxBound = maxBound;
+    }
+
+    /**
+     * Finds the shortest solution from a start Configuration
+     * @param start config
+     * @return the Solution, or null if there is none or none within the maximum bound (see isExhausted)
+     */
+    public Solution solve(Configuration start) {
+        this.nodesPerIteration = new long[0];
+        this.exhausted = false;
+        this.path.clear();
+        this.onPath.clear();
+        this.path.add(start);
+        this.onPath.add(start);
+        int bound = this.heuristic.estimate(start);
+        while (true) {
+            this.nodes = 0;
+            this.table = this.tableSize > 0 ? this.newTable(this.tableSize) : null;
+            this.evicted = false;
+            this.cutOff = this.table != null ? new HashSet<>() : null;
+            int result = this.search(start, 0, bound);
+            this.nodesPerIteration = Arrays.copyOf(this.nodesPerIteration, this.nodesPerIteration.length + 1);
+            this.nodesPerIteration[this.nodesPerIteration.length - 1] = this.nodes;
+            if (result == FOUND) {
+                int[] moves = new int[this.path.size() - 1];
+                for (int i = 0; i < moves.length; i++) {
+                    moves[i] = this.path.get(i).moveTo(this.path.get(i + 1));
+                }
+                this.table = null;
+                this.cutOff = null;
+                return new Solution(start, moves);
+            }
+            // every configuration cut off was also searched with more slack, so nothing is left to find
+            boolean complete = this.cutOff != null && !this.evicted && this.table.keySet().containsAll(this.cutOff);
+            this.table = null;
+            this.cutOff = null;
+            if (result == INFINITY || complete) return null;
+            if (result > this.maxBound) {
+                this.exhausted = true;
+                return null;
+            }
+            bound = result;
+        }
+    }
+
+    /**
+     * Depth-first search below a configuration, cut off where the estimated total passes the bound
+     * @param config the last configuration on the path
+     * @param g number of moves from the start to config
+     * @param bound the current cost bound
+     * @return FOUND if the path now ends in a solution, otherwise the smallest estimate that passed the bound
+     */
+    private int search(Configuration config, int g, int bound) {
+        int f = g + this.heuristic.estimate(config);
+        if (f > bound) {
+            if (this.cutOff != null) {
+                this.cutOff.add(config);
+                if (this.cutOff.size() > this.tableSize) this.cutOff = null;
+            }
+            return f;
+        }
+        this.nodes++;
+        if (config.isSolution()) return FOUND;
+        if (this.table != null) {
+            Integer seen = this.table.get(config);
+            if (seen != null && seen <= g) return INFINITY;
+            this.table.put(config, g);
+        }
+        int min = INFINITY;
+        for (Configuration neighbor : config.getNeighbors()) {
+            if (this.onPath.contains(neighbor)) continue;
+            this.path.add(neighbor);
+            this.onPath.add(neighbor);
+            int result = this.search(neighbor, g + 1, bound);
+            if (result == FOUND) return FOUND;
+            this.path.remove(this.path.size() - 1);
+            this.onPath.remove(neighbor);
+            min = Math.min(min, result);
+        }
+        return min;
+    }
+
+    /**
+     * @return an access-ordered map that drops its least recently used entry past the capacity, noting that it did
+     */
+    private Map<Configuration, Integer> newTable(int capacity) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Configuration, Integer> eldest) {
+                if (this.size() <= capacity) return false;
+                IDAStarSolver.this.evicted = true;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return the number of iterations (cost bounds tried) in the last search
+     */
+    public int getIterations() {
+        return this.nodesPerIteration.length;
+    }
+
+    /**
+     * @return true if the last search gave up at the maximum bound rather than proving there is no solution
+     */
+    public boolean isExhausted() {
+        return this.exhausted;
+    }
+
+    /**
+     * @return the number of configurations searched in each iteration of the last search
+     */
+    public long[] getNodesPerIteration() {
+        return this.nodesPerIteration.clone();
+    }
+}
@@ -0,0 +1,182 @@
+package puzzles.common.solver;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Difficulty analytics for a puzzle, gathered in a single exhaustive BFS pass using Solver.explore
+ * Counts distinct optimal solutions with layer by layer dynamic programming: the number of shortest paths to a
+ * configuration is the sum of the shortest path counts of its parents in the previous layer. The edges are kept
+ * as pairs of configuration numbers, and a backward BFS over them from the solved configurations afterwards finds
+ * the dead ends: configurations from which no solution can be reached
+ * @author Kilian Jakstis
+ */
+public class PuzzleAnalytics implements Solver.Visitor {
+
+    /** number of shortest paths from the start to each configuration */
+    private final Map<Configuration, Long> paths = new HashMap<>();
+    private int optimalLength = -1; // depth of the shallowest solution, -1 if unsolvable
+    private long optimalSolutions = 0; // number of distinct shortest solutions
+    private long reachable = 0; // number of unique reachable configurations
+    private long edges = 0; // number of generated neighbors
+    private long deadEnds = 0; // configurations from which no solution can be reached
+
+    // the state graph, only kept during analyze
+    private final Map<Configuration, Integer> ids = new HashMap<>(); // configuration -> its number
+    private final BitSet goals = new BitSet(); // numbers of the solved configurations
+    private int[] edgeFrom = new int[1024]; // number of each edge's parent
+    private int[] edgeTo = new int[1024]; // number of each edge's child
+    private int edgeCount = 0;
+
+    /**
+     * Runs the analytics on a starting configuration
+     * @param start the puzzle to analyze
+     * @return the finished analytics
+     */
+    public static PuzzleAnalytics analyze(Configuration start) {
+        PuzzleAnalytics analytics = new PuzzleAnalytics();
+        analytics.paths.put(start, 1L);
+        new Solver().explore(start, analytics);
+        analytics.paths.clear();
+        analytics.countDeadEnds();
+        analytics.ids.clear();
+        analytics.edgeFrom = null;
+        analytics.edgeTo = null;
+        return analytics;
+    }
+
+    /**
+     * Private constructor; use analyze
+     */
+    private PuzzleAnalytics() {
+    }
+
+    /**
+     * Records the expansion of a configuration
+     * @param config the configuration being expanded
+     * @param depth number of moves from the start configuration
+     * @param neighbors number of neighbor configurations it generated
+     */
+    @Override
+    public void expand(Configuration config, int depth, int neighbors) {
+        this.reachable++;
+        this.edges += neighbors;
+        boolean solved = config.isSolution();
+        if (solved && (this.optimalLength == -1 || this.optimalLength == depth)) {
+            this.optimalLength = depth;
+            this.optimalSolutions = saturatingAdd(this.optimalSolutions, this.paths.get(config));
+        }
+        if (solved) {
+            this.goals.set(this.id(config));
+        }
+    }
+
+    /**
+     * Pushes the shortest path count of the parent onto children in the next layer
+     * @param parent the configuration being expanded
+     * @param depth depth of the parent
+     * @param child the generated neighbor
+     * @param childDepth depth at which the neighbor was first reached
+     */
+    @Override
+    public void edge(Configuration parent, int depth, Configuration child, int childDepth) {
+        if (childDepth == depth + 1) {
+            this.paths.merge(child, this.paths.get(parent), PuzzleAnalytics::saturatingAdd);
+        }
+        if (this.edgeCount == this.edgeFrom.length) {
+            this.edgeFrom = Arrays.copyOf(this.edgeFrom, this.edgeCount * 2);
+            this.edgeTo = Arrays.copyOf(this.edgeTo, this.edgeCount * 2);
+        }
+        this.edgeFrom[this.edgeCount] = this.id(parent);
+        this.edgeTo[this.edgeCount++] = this.id(child);
+    }
+
+    /**
+     * @return the configuration's number, giving it the next one if it has none yet
+     */
+    private int id(Configuration config) {
+        return this.ids.computeIfAbsent(config, c -> this.ids.size());
+    }
+
+    /**
+     * Walks the edges backwards from every solved configuration; whatever isn't reached can't reach a solution
+     */
+    private void countDeadEnds() {
+        int n = this.ids.size();
+        // parents of each configuration, grouped by child
+        int[] start = new int[n + 1];
+        for (int e = 0; e < this.edgeCount; e++) {
+            start[this.edgeTo[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] fill = Arrays.copyOf(start, n);
+        int[] parents = new int[this.edgeCount];
+        for (int e = 0; e < this.edgeCount; e++) {
+            parents[fill[this.edgeTo[e]]++] = this.edgeFrom[e];
+        }
+        BitSet solvable = (BitSet) this.goals.clone();
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int g = this.goals.nextSetBit(0); g >= 0; g = this.goals.nextSetBit(g + 1)) {
+            queue[tail++] = g;
+        }
+        while (head < tail) {
+            int c = queue[head++];
+            for (int i = start[c]; i < start[c + 1]; i++) {
+                if (!solvable.get(parents[i])) {
+                    solvable.set(parents[i]);
+                    queue[tail++] = parents[i];
+                }
+            }
+        }
+        this.deadEnds = n - tail;
+    }
+
+    /**
+     * Adds two path counts, sticking at Long.MAX_VALUE instead of overflowing
+     */
+    private static long saturatingAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * @return length of the shortest solution, or -1 if the puzzle has no solution
+     */
+    public int getOptimalLength() {
+        return this.optimalLength;
+    }
+
+    /**
+     * @return number of distinct shortest solutions (saturates at Long.MAX_VALUE)
+     */
+    public long getOptimalSolutions() {
+        return this.optimalSolutions;
+    }
+
+    /**
+     * @return number of unique configurations reachable from the start
+     */
+    public long getReachable() {
+        return this.reachable;
+    }
+
+    /**
+     * @return average number of neighbors generated per configuration
+     */
+    public double getBranchingFactor() {
+        return this.reachable == 0 ? 0 : (double) this.edges / this.reachable;
+    }
+
+    /**
+     * @return number of reachable configurations from which no solution can be reached (all of them if the
+     * puzzle is unsolvable)
+     */
+    public long getDeadEnds() {
+        return this.deadEnds;
+    }
+}
@@ -0,0 +1,56 @@
+package puzzles.common.solver;
+import java.util.List;
+
+/**
+ * Everything one Solver search produced: how it ended, the solution, and what it cost
+ * Immutable, so results can be handed between threads; the boards of the path are only built if asked for.
+ * @param status how the search ended
+ * @param solution the shortest solution, or null unless solved
+ * @param uniqueConfigs unique configurations generated
+ * @param totalConfigs configurations generated, including repeats
+ * @param nanos how long the search took
+ * @author Kilian Jakstis
+ */
+public record SearchResult(Status status, Solution solution, long uniqueConfigs, long totalConfigs, long nanos) {
+
+    /**
+     * How a search ended
+     */
+    public enum Status {
+        /** a shortest solution was found by searching */
+        SOLVED,
+        /** the solution store already knew a shortest solution, nothing was searched */
+        STORED,
+        /** every reachable configuration was searched and none is solved */
+        UNSOLVABLE,
+        /** every reachable configuration was visited without looking for solutions (Solver.explore) */
+        EXPLORED
+    }
+
+    /**
+     * @return true if there is a solution
+     */
+    public boolean isSolved() {
+        return this.solution != null;
+    }
+
+    /**
+     * Builds the boards along the solution
+     * @return an unmodifiable list from the start to the solved configuration, or null if there is no solution
+     */
+    public List<Configuration> path() {
+        if (this.solution == null) return null;
+        Configuration[] path = new Configuration[this.solution.size()];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = this.solution.get(i);
+        }
+        return List.of(path);
+    }
+
+    /**
+     * @return how long the search took in milliseconds
+     */
+    public double millis() {
+        return this.nanos / 1e6;
+    }
+}
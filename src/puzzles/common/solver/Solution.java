@@ -0,0 +1,115 @@
+package puzzles.common.solver;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A solution stored as a start configuration plus a list of packed moves (see Configuration.moveTo)
+ * Boards along the solution are only built when asked for, by replaying moves from the start, so a
+ * solution costs four bytes per step instead of a full board per step.
+ * @author Kilian Jakstis
+ */
+public class Solution {
+    private final Configuration start; // the configuration the solution starts from
+    private final int[] moves; // packed moves, in order
+    private Configuration cursor; // the most recently replayed configuration
+    private int cursorIndex; // its index along the solution
+
+    /**
+     * Makes a solution
+     * @param start the configuration the solution starts from
+     * @param moves the packed moves, in order (not copied)
+     */
+    public Solution(Configuration start, int[] moves) {
+        this.start = start;
+        this.moves = moves;
+        this.cursor = start;
+        this.cursorIndex = 0;
+    }
+
+    /**
+     * @return the number of moves in the solution
+     */
+    public int getLength() {
+        return this.moves.length;
+    }
+
+    /**
+     * @return the number of configurations along the solution, including the start
+     */
+    public int size() {
+        return this.moves.length + 1;
+    }
+
+    /**
+     * @return the configuration the solution starts from
+     */
+    public Configuration getStart() {
+        return this.start;
+    }
+
+    /**
+     * @param i index of a move, 0 for the first move
+     * @return the packed move
+     */
+    public int getMove(int i) {
+        return this.moves[i];
+    }
+
+    /**
+     * @return a copy of the packed moves
+     */
+    public int[] getMoves() {
+        return this.moves.clone();
+    }
+
+    /**
+     * Builds the configuration after the first i moves, replaying forward from the last one built when possible
+     * @param i index along the solution, 0 for the start
+     * @return the configuration
+     */
+    public synchronized Configuration get(int i) {
+        if (i < 0 || i > this.moves.length) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for solution of size " + this.size());
+        }
+        if (i < this.cursorIndex) {
+            this.cursor = this.start;
+            this.cursorIndex = 0;
+        }
+        while (this.cursorIndex < i) {
+            this.cursor = this.cursor.applyMove(this.moves[this.cursorIndex++]);
+        }
+        return this.cursor;
+    }
+
+    /**
+     * @return the solved configuration at the end of the solution
+     */
+    public Configuration getEnd() {
+        return this.get(this.moves.length);
+    }
+
+    /**
+     * The rest of the solution from the i-th configuration onward
+     * @param i index along the solution
+     * @return the remaining solution
+     */
+    public Solution from(int i) {
+        return new Solution(this.get(i), Arrays.copyOfRange(this.moves, i, this.moves.length));
+    }
+
+    /**
+     * Replays the whole solution
+     * @return every configuration along the solution, starting with the start
+     */
+    public List<Configuration> toConfigurations() {
+        List<Configuration> path = new ArrayList<>(this.size());
+        Configuration config = this.start;
+        path.add(config);
+        for (int move : this.moves) {
+            config = config.applyMove(move);
+            path.add(config);
+        }
+        return path;
+    }
+}
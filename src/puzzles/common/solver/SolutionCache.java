@@ -0,0 +1,121 @@
+package puzzles.common.solver;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Remembers solutions by the canonical encoding of their start, so a puzzle that only differs from an earlier one
+ * in its car letters is answered from the cache with the moves mapped back to its own cars
+ * Safe to share between threads; a second request for a puzzle that is being solved waits for that search.
+ * Holds at most a fixed number of puzzles, dropping the least recently used; a search that fails isn't kept.
+ * @author Kilian Jakstis
+ */
+public class SolutionCache {
+
+    /**
+     * Puzzles kept unless given
+     */
+    public static final int DEFAULT_CAPACITY = 65_536;
+
+    /**
+     * Canonical key -> moves of the canonical solution, empty if unsolvable; in access order for LRU eviction.
+     * Guarded by its own lock, which is never held during a search
+     */
+    private final LinkedHashMap<String, CompletableFuture<Optional<int[]>>> solutions;
+
+    /**
+     * Lookups answered without searching, and searches run
+     */
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Makes a cache of the default size
+     */
+    public SolutionCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Makes a cache
+     * @param capacity puzzles kept
+     */
+    public SolutionCache(int capacity) {
+        this.solutions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Optional<int[]>>> eldest) {
+                return this.size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Key for caches of solutions: the puzzle type plus the packed canonical configuration
+     * @param config a start configuration
+     * @return the key shared by every relabeling of it
+     */
+    public static String key(Configuration config) {
+        Configuration canonical = config.canonical();
+        return canonical.getClass().getName() + ':' + new String(canonical.encode(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Solves a puzzle unless an equivalent one was solved already
+     * @param start the puzzle
+     * @param solver solves canonical configurations, returning null if there is no solution
+     * @return the solution in the start's own labels, or null if there is none
+     */
+    public Solution solve(Configuration start, Function<Configuration, Solution> solver) {
+        String key = key(start);
+        CompletableFuture<Optional<int[]>> mine = new CompletableFuture<>();
+        CompletableFuture<Optional<int[]>> known;
+        synchronized (this.solutions) {
+            known = this.solutions.putIfAbsent(key, mine);
+        }
+        if (known == null) {
+            this.misses.increment();
+            try {
+                Solution solution = solver.apply(start.canonical());
+                mine.complete(solution == null ? Optional.empty() : Optional.of(solution.getMoves()));
+            } catch (Throwable t) {
+                // waiters get the failure, later requests search again
+                synchronized (this.solutions) {
+                    this.solutions.remove(key, mine);
+                }
+                mine.completeExceptionally(t);
+                throw t;
+            }
+            known = mine;
+        } else {
+            this.hits.increment();
+        }
+        return known.join().map(moves -> new Solution(start, start.fromCanonical(moves))).orElse(null);
+    }
+
+    /**
+     * @return number of solves answered from the cache
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return number of searches run
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return number of distinct puzzles cached
+     */
+    public int size() {
+        synchronized (this.solutions) {
+            return this.solutions.size();
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package puzzles.common.solver;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Persistent table of what earlier searches learned: for a configuration, a next move towards the goal and the
+ * distance to it. Shared across sessions and processes through a memory-mapped file.
+ * Keys hash the configuration's encode(), not its fingerprint: packed moves name pieces by their index (the
+ * order of the car lines in a Rush Hour file), and fingerprints only see the board, so a board saved with its
+ * cars in another order would be handed moves meant for different cars.
+ *
+ * The file is a 64 byte header (magic, version, slot count, used slots) and a fixed open addressing table of
+ * 16 byte slots: the key, then the move and distance packed into one long so they change together. Only the
+ * process holding the file lock writes; every other process maps it read-only. Readers take no locks: a writer
+ * fills a slot's value before publishing its key with a release store, and readers load keys with acquire.
+ * The table doesn't grow; once it is three quarters full new keys are dropped and known ones still improve.
+ * A writer that opens a file of an older version starts it over empty.
+ * A file can only be open once per JVM; threads share that instance (see shared()).
+ * @author Kilian Jakstis
+ */
+public class SolutionStore implements AutoCloseable {
+
+    /**
+     * Distance stored for configurations that can't reach a goal
+     */
+    public static final int UNSOLVABLE = Integer.MAX_VALUE >>> 1;
+
+    /**
+     * File format constants
+     */
+    private static final int MAGIC = 0x50534F4C;
+    private static final int VERSION = 2;
+    private static final int HEADER = 64;
+    private static final int SLOT = 16;
+
+    /**
+     * Slots in a new file unless given, 32 MB
+     */
+    public static final int DEFAULT_SLOTS = 1 << 21;
+
+    /**
+     * Marks distances that are exact rather than an upper bound
+     */
+    private static final int EXACT = 1 << 30;
+
+    /**
+     * Aligned 8 byte access to the mapped file
+     */
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /**
+     * What the store knows about a configuration
+     * @param move a packed move towards the goal, meaningless if unsolvable
+     * @param distance moves to the goal along it, or UNSOLVABLE
+     * @param exact true if distance is the shortest, false if it is an upper bound
+     */
+    public record Entry(int move, int distance, boolean exact) {
+
+        /**
+         * @return true if the configuration can't reach a goal
+         */
+        public boolean isUnsolvable() {
+            return this.distance == UNSOLVABLE;
+        }
+
+        /**
+         * @return the value packed for a slot
+         */
+        private long pack() {
+            return (long) this.move << 32 | (this.exact ? EXACT : 0) | this.distance;
+        }
+
+        /**
+         * @return the entry in a slot's value
+         */
+        private static Entry unpack(long value) {
+            int low = (int) value;
+            return new Entry((int) (value >>> 32), low & ~EXACT, (low & EXACT) != 0);
+        }
+
+        /**
+         * @return is this better to keep than other?
+         */
+        private boolean improves(Entry other) {
+            if (other.exact) return false;
+            return this.exact || this.distance < other.distance;
+        }
+    }
+
+    /**
+     * The process-wide store, see shared()
+     */
+    private static SolutionStore shared;
+    private static boolean sharedOpened = false;
+
+    /**
+     * Files open in this JVM. A second channel on the same file must not be opened: closing any channel releases
+     * every lock the JVM holds on the file, which would silently end the writer's ownership
+     */
+    private static final Set<Path> OPEN = new HashSet<>();
+
+    private final Path file;
+    private final FileChannel channel;
+    private final FileLock lock; // null for read-only stores
+    private final MappedByteBuffer map;
+    private final int mask;
+
+    /**
+     * Opens a store, creating it with DEFAULT_SLOTS if it doesn't exist
+     * @param file the store file
+     * @throws IOException if it can't be opened or isn't a store
+     */
+    public SolutionStore(Path file) throws IOException {
+        this(file, DEFAULT_SLOTS);
+    }
+
+    /**
+     * Opens a store, as the writer if no other process is one, otherwise read-only
+     * @param file the store file
+     * @param slots table size for a new file, a power of two
+     * @throws IOException if it can't be opened, isn't a store or is already open in this JVM
+     */
+    public SolutionStore(Path file, int slots) throws IOException {
+        if (Integer.bitCount(slots) != 1 || (long) slots * SLOT + HEADER > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("slots must be a power of two under 2^27: " + slots);
+        }
+        this.file = file.toAbsolutePath().normalize();
+        synchronized (OPEN) {
+            if (!OPEN.add(this.file)) throw new IOException("Already open in this JVM, share it instead: " + file);
+        }
+        FileChannel channel = null;
+        FileLock lock;
+        MappedByteBuffer map;
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            lock = channel.tryLock();
+            if (lock != null && olderVersion(channel)) {
+                channel.truncate(0);
+            }
+            if (lock != null && channel.size() == 0) {
+                map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) slots * SLOT);
+                map.order(ByteOrder.nativeOrder());
+                map.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, slots);
+            } else {
+                if (channel.size() < HEADER) throw new IOException("Not a solution store: " + file);
+                FileChannel.MapMode mode = lock != null ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+                map = channel.map(mode, 0, channel.size());
+                map.order(ByteOrder.nativeOrder());
+                if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION
+                        || channel.size() != HEADER + (long) map.getInt(8) * SLOT) {
+                    throw new IOException("Not a solution store: " + file);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) channel.close();
+            synchronized (OPEN) {
+                OPEN.remove(this.file);
+            }
+            throw e;
+        }
+        this.channel = channel;
+        this.map = map;
+        this.lock = lock;
+        this.mask = this.map.getInt(8) - 1;
+    }
+
+    /**
+     * @return true if the file is a store of an older version
+     */
+    private static boolean olderVersion(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+        return channel.read(header, 0) == 8 && header.getInt(0) == MAGIC && header.getInt(4) < VERSION;
+    }
+
+    /**
+     * The store the models share, at the path in the puzzles.store system property or ~/.puzzles/solutions.store
+     * Opened on first use; if that fails hints just search as before
+     * @return the store, or null if it couldn't be opened
+     */
+    public static synchronized SolutionStore shared() {
+        if (!sharedOpened) {
+            sharedOpened = true;
+            String path = System.getProperty("puzzles.store",
+                    Path.of(System.getProperty("user.home"), ".puzzles", "solutions.store").toString());
+            try {
+                shared = new SolutionStore(Path.of(path));
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Solution store unavailable: " + e.getMessage());
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * @return the key for a configuration; 0 marks empty slots
+     */
+    private static long key(Configuration config) {
+        long key = Fingerprints.of(config.encode());
+        return key == 0 ? 1 : key;
+    }
+
+    /**
+     * Looks a configuration up. The move is checked to be one of the configuration's own and to lead to a stored
+     * configuration one move closer, so a key collision can't hand out a wrong move
+     * @param config the configuration
+     * @return what is known, or null if nothing is
+     */
+    public Entry lookup(Configuration config) {
+        Entry entry = this.find(config);
+        if (entry == null || entry.isUnsolvable()) return entry;
+        if (entry.distance() == 0) return config.isSolution() ? entry : null;
+        boolean legal = false;
+        for (int move : config.getMoves()) {
+            legal |= move == entry.move();
+        }
+        if (!legal) return null;
+        Entry next = this.find(config.applyMove(entry.move()));
+        if (next == null || next.isUnsolvable()) return null;
+        if (entry.exact() ? next.distance() != entry.distance() - 1 : next.distance() >= entry.distance()) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * @return the entry stored under a configuration's key, unchecked, or null if there is none
+     */
+    private Entry find(Configuration config) {
+        long key = key(config);
+        for (int i = (int) key & this.mask, probes = 0; probes <= this.mask; i = (i + 1) & this.mask, probes++) {
+            long k = (long) LONGS.getAcquire(this.map, HEADER + i * SLOT);
+            if (k == 0) return null;
+            if (k == key) return Entry.unpack((long) LONGS.getAcquire(this.map, HEADER + i * SLOT + 8));
+        }
+        return null;
+    }
+
+    /**
+     * Records what a search learned about a configuration, keeping whichever of the old and new entries is better
+     * Does nothing in read-only stores
+     * @param config the configuration
+     * @param move a packed move towards the goal (anything if unsolvable or solved)
+     * @param distance moves to the goal along it, or UNSOLVABLE
+     * @param exact is distance the shortest?
+     */
+    public synchronized void record(Configuration config, int move, int distance, boolean exact) {
+        if (this.lock == null) return;
+        long key = key(config);
+        Entry entry = new Entry(move, distance, exact);
+        for (int i = (int) key & this.mask, probes = 0; probes <= this.mask; i = (i + 1) & this.mask, probes++) {
+            int at = HEADER + i * SLOT;
+            long k = (long) LONGS.getAcquire(this.map, at);
+            if (k == key) {
+                if (entry.improves(Entry.unpack((long) LONGS.getAcquire(this.map, at + 8)))) {
+                    LONGS.setRelease(this.map, at + 8, entry.pack());
+                }
+                return;
+            }
+            if (k == 0) {
+                int used = this.map.getInt(12);
+                if (used >= (this.mask + 1) / 4 * 3) return;
+                // value first, then publish the key
+                LONGS.setRelease(this.map, at + 8, entry.pack());
+                LONGS.setRelease(this.map, at, key);
+                this.map.putInt(12, used + 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Follows exact entries from a configuration to a goal
+     * @param start config
+     * @return the shortest solution, or null if the store doesn't know one all the way
+     */
+    public Solution path(Configuration start) {
+        Entry entry = this.lookup(start);
+        if (entry == null || !entry.exact() || entry.isUnsolvable()) return null;
+        int[] moves = new int[entry.distance()];
+        Configuration current = start;
+        for (int i = 0; i < moves.length; i++) {
+            Entry next = this.lookup(current);
+            if (next == null || !next.exact() || next.distance() != moves.length - i) return null;
+            moves[i] = next.move();
+            current = current.applyMove(next.move());
+        }
+        return current.isSolution() ? new Solution(start, moves) : null;
+    }
+
+    /**
+     * @return true if this process is the store's writer
+     */
+    public boolean isWritable() {
+        return this.lock != null;
+    }
+
+    /**
+     * @return number of configurations stored
+     */
+    public int size() {
+        return this.map.getInt(12);
+    }
+
+    /**
+     * Flushes and releases the file
+     * @throws IOException if flushing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.lock != null) {
+            this.map.force();
+        }
+        this.channel.close();
+        synchronized (OPEN) {
+            OPEN.remove(this.file);
+        }
+    }
+}
@@ -1,84 +1,242 @@
 package puzzles.common.solver;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 /**
  * BFS common solver class
- * Generates and returns the shortest path
- * Provides stats for the number of configurations
+ * Generates and returns the shortest path, with stats for the number of configurations in a SearchResult
+ * Keeps no state between searches, so one instance can run any number of searches at once on different threads
  * @author Kilian Jakstis
  */
 public class Solver {
 
     /**
-     * Fields for tracking configuration stats
+     * Configuration counts of one search in progress
      */
-    private int uniqueConfigs = 0;
-    private int totalConfigs = 0;
+    private static final class Counts {
+        private long unique = 0;
+        private long total = 0;
+    }
+
+    /**
+     * Where searches record what they learn and solve looks first, or null
+     */
+    private final SolutionStore store;
+
+    /**
+     * Makes a solver that doesn't use a store
+     */
+    public Solver() {
+        this(null);
+    }
+
+    /**
+     * Makes a solver that answers from the store when it can and records every search in it
+     * @param store the solution store, or null for none
+     */
+    public Solver(SolutionStore store) {
+        this.store = store;
+    }
 
     /**
      * Finds the shortest path from a start Configuration to a solved Configuration
      * @param start config
-     * @return Path Collection of Configurations detailing the path
+     * @return unmodifiable list of the Configurations along the path, or null if there is none
+     * @throws CancellationException if the thread is interrupted during the search
+     */
+    public List<Configuration> findPath(Configuration start) {
+        return this.search(start).path();
+    }
+
+    /**
+     * Finds the shortest solution from a start Configuration, as a compact list of moves
+     * @param start config
+     * @return the Solution, or null if there is none
+     * @throws CancellationException if the thread is interrupted during the search
+     */
+    public Solution solve(Configuration start) {
+        return this.search(start).solution();
+    }
+
+    /**
+     * Finds the shortest solution from a start Configuration, answering from the store if it knows one
+     * @param start config
+     * @return the result: the Solution if there is one, and what the search cost
+     * @throws CancellationException if the thread is interrupted during the search
+     */
+    public SearchResult search(Configuration start) {
+        long begin = System.nanoTime();
+        if (this.store != null) {
+            Solution known = this.store.path(start);
+            if (known != null) {
+                return new SearchResult(SearchResult.Status.STORED, known, 0, 0, System.nanoTime() - begin);
+            }
+        }
+        Counts counts = new Counts();
+        Map<Configuration, Configuration> visited = new HashMap<>();
+        Configuration end = this.search(start, visited, counts);
+        this.record(end, visited);
+        if (end == null) {
+            return new SearchResult(SearchResult.Status.UNSOLVABLE, null, counts.unique, counts.total,
+                    System.nanoTime() - begin);
+        }
+        int[] moves = new int[depth(end, visited)];
+        for (int i = moves.length - 1; i >= 0; i--) {
+            Configuration parent = visited.get(end);
+            moves[i] = parent.moveTo(end);
+            end = parent;
+        }
+        return new SearchResult(SearchResult.Status.SOLVED, new Solution(start, moves), counts.unique, counts.total,
+                System.nanoTime() - begin);
+    }
+
+    /**
+     * BFS from start until a solution is found
+     * @param start config
+     * @param visited filled with every generated configuration and its predecessor (null for start)
+     * @param counts the search's configuration counts
+     * @return the solved configuration that was reached first, or null if there is none
      */
-    public Collection<Configuration> findPath(Configuration start) {
+    private Configuration search(Configuration start, Map<Configuration, Configuration> visited, Counts counts) {
         // if start is a solution:
         if (start.isSolution()) {
-            ArrayList<Configuration> thing = new ArrayList<>();
-            thing.add(start);
-            uniqueConfigs++;
-            totalConfigs++;
-            return thing;
+            visited.put(start, null);
+            counts.unique++;
+            counts.total++;
+            return start;
         }
-        // make predecessor map and to-visit queue
-        Map<Configuration, Configuration> visited = new HashMap<>();
+        // make to-visit queue
         ArrayDeque<Configuration> queue = new ArrayDeque<>();
         visited.put(start, null);
         queue.add(start);
         // start generating new configurations
         Configuration currentPoint;
         while (!queue.isEmpty() && !queue.peek().isSolution()){
+            checkInterrupted();
             currentPoint = queue.remove();
             Collection<Configuration> neighbors = currentPoint.getNeighbors();
             for (Configuration config : neighbors){
-                totalConfigs++;
+                counts.total++;
                 if (!visited.containsKey(config)){
                     queue.add(config);
-                    uniqueConfigs++;
+                    counts.unique++;
                     visited.put(config, currentPoint);
                 }
             }
         }
         if (queue.isEmpty()) return null;
-        else {
-            ArrayList<Configuration> path = new ArrayList<>();
-            Configuration endConfig = (queue.peek());
-            path.add(endConfig);
-            Configuration config = visited.get(endConfig);
-            while (config != null ) {
-                path.add(config);
-                config = visited.get(config);
-            }
-            ArrayList<Configuration> pathCorrect = new ArrayList<>();
-            for (int i = path.size()-1; i>=0; i--){
-                pathCorrect.add(path.get(i));
+        counts.total++;
+        return queue.peek();
+    }
+
+    /**
+     * Writes what a search learned to the store:
+     * states on the solution path get their exact distance and next move; if there was no solution every visited
+     * state is unsolvable, since all of them were reached from the start. Other visited states aren't written:
+     * all anyone knows of them is an upper bound, which no reader uses and which would fill the fixed table
+     * @param end the solution found, or null
+     * @param visited the search's predecessor map
+     */
+    private void record(Configuration end, Map<Configuration, Configuration> visited) {
+        if (this.store == null || !this.store.isWritable()) return;
+        if (end == null) {
+            for (Configuration config : visited.keySet()) {
+                this.store.record(config, 0, SolutionStore.UNSOLVABLE, true);
             }
-            totalConfigs++;
-            return pathCorrect;
+            return;
+        }
+        int length = depth(end, visited);
+        this.store.record(end, 0, 0, true);
+        Configuration child = end;
+        for (int d = length - 1; d >= 0; d--) {
+            Configuration parent = visited.get(child);
+            this.store.record(parent, parent.moveTo(child), length - d, true);
+            child = parent;
         }
     }
 
     /**
-     * @return the number of unique configurations generated
+     * Lets background searches be cancelled by interrupting their thread
+     * @throws CancellationException if the thread was interrupted; the interrupt stays set
      */
-    public int getUniqueConfigs(){
-        return uniqueConfigs;
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("search interrupted");
+        }
     }
 
     /**
-     * @return the total number of total configurations generated
+     * @return number of moves from the start to config, following the predecessor map
      */
-    public int getTotalConfigs() {
-        return totalConfigs;
+    private static int depth(Configuration config, Map<Configuration, Configuration> visited) {
+        int depth = 0;
+        for (Configuration c = visited.get(config); c != null; c = visited.get(c)) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Callback interface for an exhaustive breadth first exploration of a puzzle's state space
+     */
+    public interface Visitor {
+
+        /**
+         * Called once for every unique configuration, in BFS order, when it is expanded
+         * @param config the configuration being expanded
+         * @param depth number of moves from the start configuration
+         * @param neighbors number of neighbor configurations it generated
+         */
+        void expand(Configuration config, int depth, int neighbors);
+
+        /**
+         * Called for every neighbor generated while expanding a configuration
+         * @param parent the configuration being expanded
+         * @param depth depth of the parent
+         * @param child the generated neighbor
+         * @param childDepth depth at which the neighbor was first reached
+         */
+        void edge(Configuration parent, int depth, Configuration child, int childDepth);
+    }
+
+    /**
+     * Explores every configuration reachable from start in breadth first order, reporting each expansion and
+     * each generated edge to the visitor. Unlike findPath this does not stop at the first solution.
+     * @param start config
+     * @param visitor receives the expansions and edges
+     * @return the counts and time of the exploration, with status EXPLORED
+     * @throws CancellationException if the thread is interrupted during the exploration
+     */
+    public SearchResult explore(Configuration start, Visitor visitor) {
+        long begin = System.nanoTime();
+        Counts counts = new Counts();
+        // depth map doubles as the visited set
+        Map<Configuration, Integer> depths = new HashMap<>();
+        ArrayDeque<Configuration> queue = new ArrayDeque<>();
+        depths.put(start, 0);
+        queue.add(start);
+        counts.unique++;
+        counts.total++;
+        while (!queue.isEmpty()) {
+            checkInterrupted();
+            Configuration current = queue.remove();
+            int depth = depths.get(current);
+            Collection<Configuration> neighbors = current.getNeighbors();
+            visitor.expand(current, depth, neighbors.size());
+            for (Configuration config : neighbors) {
+                counts.total++;
+                Integer childDepth = depths.get(config);
+                if (childDepth == null) {
+                    childDepth = depth + 1;
+                    depths.put(config, childDepth);
+                    queue.add(config);
+                    counts.unique++;
+                }
+                visitor.edge(current, depth, config, childDepth);
+            }
+        }
+        return new SearchResult(SearchResult.Status.EXPLORED, null, counts.unique, counts.total,
+                System.nanoTime() - begin);
     }
 }
 
@@ -0,0 +1,229 @@
+package puzzles.common.solver;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves ahead of the player on a low priority background thread, so hints are usually ready before they are asked
+ * for. A model calls restart when a puzzle loads and speculate whenever its position changes; a search for a
+ * position the player has left is cancelled.
+ * Every solution found is kept as suffixes, one per position along it, in a bounded LRU cache, so following the
+ * hints or the same line of play needs no further search. Background searches share a time budget per puzzle,
+ * so a puzzle that is too hard to solve quickly doesn't keep a core busy while the player thinks.
+ * Safe to use from any thread.
+ * @author Kilian Jakstis
+ */
+public class SpeculativeSolver {
+
+    /**
+     * Positions kept in the cache unless given
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * Background search time per puzzle unless given, 10 s
+     */
+    public static final long DEFAULT_BUDGET = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * Runs the searches, and cancels them when the budget runs out
+     */
+    private final ExecutorService searches;
+    private final ScheduledExecutorService watchdog;
+
+    /**
+     * Runs the background searches, recording what they learn in the store if there is one
+     */
+    private final Solver solver;
+
+    /**
+     * Fingerprint -> moves from that position to a goal, empty if it has none; in access order for LRU eviction
+     */
+    private final LinkedHashMap<Long, Optional<int[]>> suffixes;
+
+    /**
+     * Background search time per puzzle, and what is left of it
+     */
+    private final long budget;
+    private long remaining;
+
+    /**
+     * Counts restarts, so a search for the last puzzle doesn't charge the new one's budget
+     */
+    private int generation = 0;
+
+    /**
+     * The background search, the position it is for, and the timer that cancels it
+     */
+    private Future<?> running;
+    private long runningPrint;
+    private ScheduledFuture<?> timeout;
+
+    /**
+     * Makes a speculative solver with the default cache size and budget
+     * @param store where searches record what they learn, or null for none
+     */
+    public SpeculativeSolver(SolutionStore store) {
+        this(store, DEFAULT_CAPACITY, DEFAULT_BUDGET);
+    }
+
+    /**
+     * Makes a speculative solver
+     * @param store where searches record what they learn, or null for none
+     * @param capacity positions kept in the cache
+     * @param budget background search time per puzzle in nanoseconds
+     */
+    public SpeculativeSolver(SolutionStore store, int capacity, long budget) {
+        this.solver = new Solver(store);
+        this.budget = budget;
+        this.remaining = budget;
+        this.suffixes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Optional<int[]>> eldest) {
+                return this.size() > capacity;
+            }
+        };
+        this.searches = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "speculative-solver");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "speculative-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * A new puzzle was loaded: refills the budget and starts solving it
+     * @param start the puzzle
+     */
+    public synchronized void restart(Configuration start) {
+        this.cancel();
+        this.generation++;
+        this.remaining = this.budget;
+        this.speculate(start);
+    }
+
+    /**
+     * The position changed: cancels the search for the old one and starts on this one unless it is already known,
+     * being searched, or the budget is used up
+     * @param config the new position
+     */
+    public synchronized void speculate(Configuration config) {
+        long print = config.fingerprint();
+        if (this.running != null && !this.running.isDone() && this.runningPrint == print) return;
+        this.cancel();
+        if (this.suffixes.containsKey(print) || this.remaining <= 0) return;
+        this.runningPrint = print;
+        int generation = this.generation;
+        Future<?> task = this.searches.submit(() -> {
+            long begin = System.nanoTime();
+            try {
+                Solution solution = this.solver.solve(config);
+                this.remember(config, solution);
+            } finally {
+                synchronized (this) {
+                    if (this.generation == generation) this.remaining -= System.nanoTime() - begin;
+                }
+            }
+        });
+        this.running = task;
+        this.timeout = this.watchdog.schedule(() -> task.cancel(true), this.remaining, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Cancels the background search, e.g. when hints come from somewhere else
+     */
+    public synchronized void stop() {
+        this.cancel();
+    }
+
+    /**
+     * Solves a position for a hint: from the cache, by waiting for the background search if it is on this
+     * position, or with the given solver on the calling thread
+     * @param config the position
+     * @param solver solver to use if nothing is known
+     * @return the Solution, or null if there is none
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public Solution solve(Configuration config, Solver solver) {
+        long print = config.fingerprint();
+        Future<?> pending;
+        synchronized (this) {
+            Optional<int[]> known = this.suffixes.get(print);
+            if (known != null) return known.map(moves -> new Solution(config, moves)).orElse(null);
+            pending = this.running != null && this.runningPrint == print ? this.running : null;
+        }
+        if (pending != null) {
+            try {
+                pending.get();
+                synchronized (this) {
+                    Optional<int[]> known = this.suffixes.get(print);
+                    if (known != null) return known.map(moves -> new Solution(config, moves)).orElse(null);
+                }
+            } catch (CancellationException | ExecutionException e) {
+                // ran out of budget or failed; search here instead
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("interrupted waiting for a hint");
+            }
+        }
+        Solution solution = solver.solve(config);
+        this.remember(config, solution);
+        return solution;
+    }
+
+    /**
+     * Caches a search result: the suffix from every position along the solution, or that the start has none
+     * @param start the position searched
+     * @param solution what the search found, null if unsolvable
+     */
+    private synchronized void remember(Configuration start, Solution solution) {
+        if (solution == null) {
+            this.suffixes.put(start.fingerprint(), Optional.empty());
+            return;
+        }
+        int[] moves = solution.getMoves();
+        Configuration config = start;
+        for (int i = 0; i <= moves.length; i++) {
+            this.suffixes.put(config.fingerprint(), Optional.of(Arrays.copyOfRange(moves, i, moves.length)));
+            if (i < moves.length) config = config.applyMove(moves[i]);
+        }
+    }
+
+    /**
+     * Stops the background search; the time it took is charged to the budget as it ends
+     */
+    private void cancel() {
+        if (this.running == null) return;
+        this.running.cancel(true);
+        this.timeout.cancel(false);
+        this.running = null;
+    }
+
+    /**
+     * @return background search time left for this puzzle, in nanoseconds
+     */
+    public synchronized long getRemaining() {
+        return this.remaining;
+    }
+
+    /**
+     * @return number of positions cached
+     */
+    public synchronized int size() {
+        return this.suffixes.size();
+    }
+}
@@ -0,0 +1,30 @@
+package puzzles.hoppers.model;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.Heuristic;
+
+/**
+ * Admissible heuristic for Hoppers: the number of green frogs left on the board
+ * Every jump removes exactly one green frog, so this is the exact number of jumps left on any solvable board
+ * @author Kilian Jakstis
+ */
+public class GreenFrogsHeuristic implements Heuristic {
+
+    /**
+     * Estimate the jumps left
+     * @param config - a HoppersConfig
+     * @return the number of green frogs
+     */
+    @Override
+    public int estimate(Configuration config) {
+        HoppersConfig hoppers = (HoppersConfig) config;
+        int greens = 0;
+        for (int x = 0; x < hoppers.cols; x++) {
+            for (int y = 0; y < hoppers.rows; y++) {
+                if (hoppers.board[x][y] == HoppersConfig.GREEN) {
+                    greens++;
+                }
+            }
+        }
+        return greens;
+    }
+}
@@ -1,8 +1,10 @@
 package puzzles.hoppers.model;
 import puzzles.common.solver.Configuration;
+import puzzles.common.solver.Fingerprints;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -19,6 +21,10 @@ public class HoppersConfig implements Configuration {
     public static final char INVALID = '*';
     public static final char GREEN = 'G';
     public static final char RED = 'R';
+    /** Cell characters in the order of their 2-bit packed codes */
+    private static final char[] CELLS = {VALID, INVALID, GREEN, RED};
+    /** Column and row steps to the jumped frog, in the order getNeighbors tries them; frogs land twice as far */
+    private static final int[][] JUMPS = {{-2, 0}, {2, 0}, {0, -2}, {0, 2}, {-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
     /** the number of rows and columns in the board */
     public int rows;
     public int cols;
@@ -32,27 +38,45 @@ public class HoppersConfig implements Configuration {
      */
     public HoppersConfig(String filename) {
         try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String[] s = br.readLine().split("\s++");
-            int r = Integer.parseInt(s[0]);
-            int c = Integer.parseInt(s[1]);
-            this.rows = r;
-            this.cols = c;
-            this.board = new char[c][r];
-            int i = 0;
-            String line = br.readLine();
-            while (line != null) {
-                s = line.split("\s++");
-                for (int j = 0; j < this.cols; j++) {
-                    this.board[j][i] = s[j].charAt(0);
-                }
-                i++;
-                line = br.readLine();
-            }
+            this.read(br);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Constructor for HopperConfig read from text in the Hoppers file format
+     * @param in - reader over the puzzle text
+     * @throws IOException if reading fails
+     */
+    public HoppersConfig(Reader in) throws IOException {
+        this.read(new BufferedReader(in));
+    }
+
+    /**
+     * Reads the rows, cols and board from Hoppers file text
+     * @param br - reader over the puzzle text
+     * @throws IOException if reading fails
+     */
+    private void read(BufferedReader br) throws IOException {
+        String[] s = br.readLine().split("\s++");
+        int r = Integer.parseInt(s[0]);
+        int c = Integer.parseInt(s[1]);
+        this.rows = r;
+        this.cols = c;
+        this.board = new char[c][r];
+        int i = 0;
+        String line = br.readLine();
+        while (line != null && i < this.rows) {
+            s = line.split("\s++");
+            for (int j = 0; j < this.cols; j++) {
+                this.board[j][i] = s[j].charAt(0);
+            }
+            i++;
+            line = br.readLine();
+        }
+    }
+
     /**
      * Constructor for HopperConfig when based on a 2d character board
      * Used to generate new configurations
@@ -66,6 +90,23 @@ public class HoppersConfig implements Configuration {
         this.cols = c;
     }
 
+    /**
+     * Constructor for HopperConfig unpacked from the encoding made by encode()
+     * @param packed - the packed bytes
+     */
+    public HoppersConfig(byte[] packed) {
+        this.rows = packed[0];
+        this.cols = packed[1];
+        this.board = new char[this.cols][this.rows];
+        for (int y = 0; y < this.rows; y++) {
+            for (int x = 0; x < this.cols; x++) {
+                int cell = y * this.cols + x;
+                int bits = (packed[2 + cell / 4] >> (2 * (cell % 4))) & 3;
+                this.board[x][y] = CELLS[bits];
+            }
+        }
+    }
+
     /**
      * Provides a copy of the current board - used for generation of neighbors
      * @return the copy
@@ -109,6 +150,163 @@ public class HoppersConfig implements Configuration {
         return x;
     }
 
+    /**
+     * 64 bit hash of the board, cell by cell
+     * @return the fingerprint
+     */
+    @Override
+    public long fingerprint() {
+        return Fingerprints.mix(this.rawFingerprint());
+    }
+
+    /**
+     * The fingerprint before mixing: the sum of every cell times SEED^(cells - k) for cell k in column-major order,
+     * so a jump changes it by three terms
+     * @return the raw sum
+     */
+    private long rawFingerprint() {
+        long h = 0;
+        for (char[] line : this.board) {
+            for (char c : line) {
+                h = (h + c) * Fingerprints.SEED;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Patches the raw fingerprint for every jump: the frog moves from one cell to another and the green frog in
+     * between disappears
+     * @param moves packed moves from getMoves
+     * @return fingerprint after each jump
+     */
+    @Override
+    public long[] fingerprintsAfter(int[] moves) {
+        long raw = this.rawFingerprint();
+        int n = this.cols * this.rows;
+        long[] prints = new long[moves.length];
+        for (int m = 0; m < moves.length; m++) {
+            int fromX = (moves[m] >>> 16) % this.cols;
+            int fromY = (moves[m] >>> 16) / this.cols;
+            int toX = (moves[m] & 0xFFFF) % this.cols;
+            int toY = (moves[m] & 0xFFFF) / this.cols;
+            long frog = this.board[fromX][fromY] - VALID;
+            long h = raw - frog * Fingerprints.power(n - (fromX * this.rows + fromY))
+                    + frog * Fingerprints.power(n - (toX * this.rows + toY))
+                    - (GREEN - VALID) * Fingerprints.power(n - ((fromX + toX) / 2 * this.rows + (fromY + toY) / 2));
+            prints[m] = Fingerprints.mix(h);
+        }
+        return prints;
+    }
+
+    /**
+     * The jumps getNeighbors makes, in the same order, without building the neighbors
+     * @return moves packed as in moveTo
+     */
+    @Override
+    public int[] getMoves() {
+        int[] moves = new int[8 * this.rows * this.cols];
+        int count = 0;
+        for (int x = 0; x < this.cols; x++) {
+            for (int y = 0; y < this.rows; y++) {
+                char current = this.board[x][y];
+                if (current == INVALID || current == VALID) {
+                    continue;
+                }
+                for (int[] step : JUMPS) {
+                    int overX = x + step[0];
+                    int overY = y + step[1];
+                    int toX = x + 2 * step[0];
+                    int toY = y + 2 * step[1];
+                    if (toX >= 0 && toX < this.cols && toY >= 0 && toY < this.rows
+                            && this.board[overX][overY] == GREEN && this.board[toX][toY] == VALID) {
+                        moves[count++] = ((y * this.cols + x) << 16) | (toY * this.cols + toX);
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(moves, count);
+    }
+
+    /**
+     * Packs the jump that leads to a neighbor as (from cell << 16) | to cell, numbering cells row * cols + col
+     * A jump fills one cell and empties two: the frog's old cell and the green frog it jumped over
+     * @param neighbor - a config one jump away
+     * @return the packed move
+     */
+    @Override
+    public int moveTo(Configuration neighbor) {
+        HoppersConfig other = (HoppersConfig) neighbor;
+        int landed = -1;
+        int[] vacated = new int[2];
+        int count = 0;
+        for (int y = 0; y < this.rows; y++) {
+            for (int x = 0; x < this.cols; x++) {
+                if (this.board[x][y] == VALID && other.board[x][y] != VALID) {
+                    landed = y * this.cols + x;
+                } else if (this.board[x][y] != VALID && other.board[x][y] == VALID && count < 2) {
+                    vacated[count++] = y * this.cols + x;
+                }
+            }
+        }
+        if (landed < 0 || count != 2) {
+            throw new IllegalArgumentException("Configurations are not one jump apart");
+        }
+        // the jumped frog sits halfway between the jumping frog's start and landing cells
+        int from = this.isMidpoint(vacated[0], vacated[1], landed) ? vacated[1] : vacated[0];
+        return (from << 16) | landed;
+    }
+
+    /**
+     * @return is cell mid halfway between cells a and b?
+     */
+    private boolean isMidpoint(int mid, int a, int b) {
+        return 2 * (mid % this.cols) == a % this.cols + b % this.cols
+                && 2 * (mid / this.cols) == a / this.cols + b / this.cols;
+    }
+
+    /**
+     * Makes the jump packed by moveTo, removing the green frog halfway between the from and to cells
+     * @param move - the packed move
+     * @return the config after the jump
+     */
+    @Override
+    public HoppersConfig applyMove(int move) {
+        int fromX = (move >>> 16) % this.cols;
+        int fromY = (move >>> 16) / this.cols;
+        int toX = (move & 0xFFFF) % this.cols;
+        int toY = (move & 0xFFFF) / this.cols;
+        char[][] copy = this.copyBoard();
+        copy[toX][toY] = copy[fromX][fromY];
+        copy[(fromX + toX) / 2][(fromY + toY) / 2] = VALID;
+        copy[fromX][fromY] = VALID;
+        return new HoppersConfig(copy, this.rows, this.cols);
+    }
+
+    /**
+     * Packs the config as rows and cols followed by 2 bits per cell in row-major order
+     * @return the packed bytes
+     */
+    @Override
+    public byte[] encode() {
+        byte[] packed = new byte[2 + (this.rows * this.cols + 3) / 4];
+        packed[0] = (byte) this.rows;
+        packed[1] = (byte) this.cols;
+        for (int y = 0; y < this.rows; y++) {
+            for (int x = 0; x < this.cols; x++) {
+                int cell = y * this.cols + x;
+                int bits = switch (this.board[x][y]) {
+                    case INVALID -> 1;
+                    case GREEN -> 2;
+                    case RED -> 3;
+                    default -> 0;
+                };
+                packed[2 + cell / 4] |= (byte) (bits << (2 * (cell % 4)));
+            }
+        }
+        return packed;
+    }
+
     /**
      * ToString for a HopperConfig
      * @return the board as text
@@ -0,0 +1,201 @@
+package puzzles.hoppers.model;
+import java.util.Arrays;
+
+/**
+ * The fixed shape of a Hoppers board, for solvers that work on packed states instead of HoppersConfigs
+ * Playable cells (everything but '*') are numbered 0.., so a position packs into two longs: a mask of green frogs
+ * and a mask of red frogs. Every possible jump is listed once as a (from, over, to) triple of playable cells;
+ * whether it is legal in a given position is then just three bit tests.
+ * @author Kilian Jakstis
+ */
+public final class HoppersLayout {
+
+    /**
+     * Most playable cells a layout can number
+     */
+    public static final int MAX_CELLS = 64;
+
+    /**
+     * Jump directions as column and row steps to the jumped cell; the frog lands twice as far
+     */
+    private static final int[][] STEPS = {{-2, 0}, {2, 0}, {0, -2}, {0, 2}, {-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+
+    /** board size */
+    private final int rows;
+    private final int cols;
+    /** playable index -> row * cols + col, and back (-1 for '*') */
+    private final int[] cells;
+    private final int[] index;
+    /** the jump triples, as playable indices */
+    private final int[] from;
+    private final int[] over;
+    private final int[] to;
+
+    /**
+     * Reads the shape of a board
+     * @param config any position of the puzzle
+     * @throws IllegalArgumentException if the board has more than MAX_CELLS playable cells
+     */
+    public HoppersLayout(HoppersConfig config) {
+        this.rows = config.rows;
+        this.cols = config.cols;
+        this.index = new int[this.rows * this.cols];
+        int count = 0;
+        for (int y = 0; y < this.rows; y++) {
+            for (int x = 0; x < this.cols; x++) {
+                this.index[y * this.cols + x] = config.board[x][y] == HoppersConfig.INVALID ? -1 : count++;
+            }
+        }
+        if (count > MAX_CELLS) {
+            throw new IllegalArgumentException(count + " playable cells don't fit in a long");
+        }
+        this.cells = new int[count];
+        int[] from = new int[count * STEPS.length];
+        int[] over = new int[from.length];
+        int[] to = new int[from.length];
+        int jumps = 0;
+        for (int y = 0; y < this.rows; y++) {
+            for (int x = 0; x < this.cols; x++) {
+                int start = this.at(x, y);
+                if (start < 0) continue;
+                this.cells[start] = y * this.cols + x;
+                for (int[] step : STEPS) {
+                    int mid = this.at(x + step[0], y + step[1]);
+                    int end = this.at(x + 2 * step[0], y + 2 * step[1]);
+                    if (mid >= 0 && end >= 0) {
+                        from[jumps] = start;
+                        over[jumps] = mid;
+                        to[jumps++] = end;
+                    }
+                }
+            }
+        }
+        this.from = Arrays.copyOf(from, jumps);
+        this.over = Arrays.copyOf(over, jumps);
+        this.to = Arrays.copyOf(to, jumps);
+    }
+
+    /**
+     * Does the board have few enough playable cells to pack?
+     * @param config any position of the puzzle
+     * @return true if a layout can be made for it
+     */
+    public static boolean fits(HoppersConfig config) {
+        int count = 0;
+        for (char[] line : config.board) {
+            for (char c : line) {
+                if (c != HoppersConfig.INVALID) count++;
+            }
+        }
+        return count <= MAX_CELLS;
+    }
+
+    /**
+     * @return playable index of the cell at column x, row y, or -1 if it is off the board or '*'
+     */
+    private int at(int x, int y) {
+        if (x < 0 || x >= this.cols || y < 0 || y >= this.rows) return -1;
+        return this.index[y * this.cols + x];
+    }
+
+    /**
+     * Packs the frogs of one color
+     * @param config a position of this puzzle
+     * @param frog GREEN or RED
+     * @return mask with bit i set if playable cell i holds that frog
+     */
+    public long pack(HoppersConfig config, char frog) {
+        long mask = 0;
+        for (int i = 0; i < this.cells.length; i++) {
+            int cell = this.cells[i];
+            if (config.board[cell % this.cols][cell / this.cols] == frog) mask |= 1L << i;
+        }
+        return mask;
+    }
+
+    /**
+     * Builds the position back from its masks
+     * @param green green frog mask
+     * @param red red frog mask
+     * @return the config
+     */
+    public HoppersConfig unpack(long green, long red) {
+        char[][] board = new char[this.cols][this.rows];
+        for (int y = 0; y < this.rows; y++) {
+            for (int x = 0; x < this.cols; x++) {
+                int i = this.index[y * this.cols + x];
+                board[x][y] = i < 0 ? HoppersConfig.INVALID
+                        : (green >>> i & 1) != 0 ? HoppersConfig.GREEN
+                        : (red >>> i & 1) != 0 ? HoppersConfig.RED : HoppersConfig.VALID;
+            }
+        }
+        return new HoppersConfig(board, this.rows, this.cols);
+    }
+
+    /**
+     * Packs a jump the way HoppersConfig.moveTo does, so it can go in a Solution
+     * @param jump jump number
+     * @return the packed move
+     */
+    public int move(int jump) {
+        return (this.cells[this.from[jump]] << 16) | this.cells[this.to[jump]];
+    }
+
+    /**
+     * @return board cell (row * cols + col) of each playable index; shared, don't modify
+     */
+    public int[] getCells() {
+        return this.cells;
+    }
+
+    /**
+     * @return board rows
+     */
+    public int getRows() {
+        return this.rows;
+    }
+
+    /**
+     * @return board columns
+     */
+    public int getCols() {
+        return this.cols;
+    }
+
+    /**
+     * Same playable cells on the same size of board?
+     * @param other another layout
+     * @return true if positions of one are positions of the other
+     */
+    public boolean sameShape(HoppersLayout other) {
+        return this.rows == other.rows && this.cols == other.cols && Arrays.equals(this.cells, other.cells);
+    }
+
+    /**
+     * @return number of jump triples
+     */
+    public int getJumps() {
+        return this.to.length;
+    }
+
+    /**
+     * @return playable index each jump starts from; shared, don't modify
+     */
+    public int[] getFrom() {
+        return this.from;
+    }
+
+    /**
+     * @return playable index each jump passes over; shared, don't modify
+     */
+    public int[] getOver() {
+        return this.over;
+    }
+
+    /**
+     * @return playable index each jump lands on; shared, don't modify
+     */
+    public int[] getTo() {
+        return this.to;
+    }
+}
@@ -1,9 +1,12 @@
 package puzzles.hoppers.model;
+import puzzles.common.EventDispatcher;
 import puzzles.common.Observer;
-import puzzles.common.solver.Configuration;
+import puzzles.common.PuzzleEvent;
+import puzzles.common.solver.Solution;
+import puzzles.common.solver.SolutionStore;
 import puzzles.common.solver.Solver;
-
-import java.util.*;
+import puzzles.common.solver.SpeculativeSolver;
+import java.util.concurrent.Executor;
 
 /**
  * Model for regulating Hopper Game
@@ -11,14 +14,20 @@ import java.util.*;
  */
 public class HoppersModel {
 
-    /** the collection of observers of this model */
-    private final List<Observer<HoppersModel, String>> observers = new LinkedList<>();
+    /** delivers events to the observers of this model */
+    private final EventDispatcher<HoppersModel, PuzzleEvent<HoppersConfig>> events;
     /** the current configuration */
     public HoppersConfig currentConfig;
     /** first configuration for the specific file */
     public HoppersConfig startConfig;
     /** Solver for computing hints */
     private final Solver solver;
+    /** What earlier searches learned, or null if it couldn't be opened */
+    private final SolutionStore store;
+    /** Solves ahead of the player in the background when the table can't answer */
+    private final SpeculativeSolver speculation;
+    /** Solvability of every position on the loaded puzzle's layout, or null if there is no table for it */
+    private HoppersTable table;
 
     /**
      * contains the valid first selection coordinates
@@ -28,10 +37,22 @@ public class HoppersModel {
 
     /**
      * Constructor for the model
-     * Instantiates the solver
+     * Instantiates the solver; events are delivered on a background thread
      */
     public HoppersModel(){
-        this.solver = new Solver();
+        this(EventDispatcher.background("hoppers-events"));
+    }
+
+    /**
+     * Constructor for the model
+     * Instantiates the solver
+     * @param executor - runs the delivery of events to observers, e.g. the GUI thread
+     */
+    public HoppersModel(Executor executor){
+        this.store = SolutionStore.shared();
+        this.solver = new Solver(this.store);
+        this.speculation = new SpeculativeSolver(this.store);
+        this.events = new EventDispatcher<>(this, executor, PuzzleEvent::isStateUpdate);
     }
 
     /**
@@ -44,11 +65,17 @@ public class HoppersModel {
         this.selectedRow = -1;
         this.startConfig = new HoppersConfig(filename);
         this.currentConfig = startConfig;
+        this.table = HoppersTable.forLayout(this.startConfig);
+        if (this.table != null && this.table.covers(this.startConfig)) {
+            this.speculation.stop();
+        } else {
+            this.speculation.restart(this.startConfig);
+        }
         String[] s = filename.split("/");
         if (s.length == 3){
-            this.alertObservers("Loaded: " + s[2] + "\n" + startConfig.specialPrint() + "\n");
+            this.alertObservers(new PuzzleEvent.Loaded<>(s[2], startConfig));
         } else {
-            this.alertObservers("Loaded: " + filename + "\n" + startConfig.specialPrint() + "\n");
+            this.alertObservers(new PuzzleEvent.Loaded<>(filename, startConfig));
         }
     }
 
@@ -60,7 +87,8 @@ public class HoppersModel {
         this.currentConfig = this.startConfig;
         this.selectedRow = -1;
         this.selectedCol = -1;
-        this.alertObservers("Puzzle reset: " + "\n" + startConfig.specialPrint() + "\n");
+        this.speculate();
+        this.alertObservers(new PuzzleEvent.Reset<>(startConfig));
     }
 
     /**
@@ -68,20 +96,70 @@ public class HoppersModel {
      * view. If the puzzle is already solved or no solution is found, the appropriate message is relayed to the view.
      */
     public void hint(){
-        ArrayList<Configuration> path = (ArrayList<Configuration>) this.solver.findPath(this.currentConfig);
+        if (this.tableHint() || this.storedHint()) return;
+        Solution path = this.speculation.solve(this.currentConfig, this.solver);
         if (path == null){
-            this.alertObservers("No solution found.");
+            this.alertObservers(new PuzzleEvent.Error<>("No solution found."));
             return;
         }
         if (this.currentConfig.isSolution()){
-            this.alertObservers("Already solved!");
+            this.alertObservers(new PuzzleEvent.Solved<>(this.currentConfig));
         } else {
             HoppersConfig h = (HoppersConfig) path.get(1);
             this.currentConfig = h;
-            this.alertObservers("Next step: " + "\n" + h.specialPrint() + "\n");
+            this.speculate();
+            this.alertObservers(h.isSolution() ? new PuzzleEvent.Solved<>(h) : new PuzzleEvent.Hint<>(h));
+        }
+    }
+
+    /**
+     * Starts solving the current position in the background, unless the table answers for it anyway
+     */
+    private void speculate() {
+        if (this.table == null || !this.table.covers(this.currentConfig)) {
+            this.speculation.speculate(this.currentConfig);
         }
     }
 
+    /**
+     * Gives the hint from the layout's table if there is one, with one lookup per legal jump
+     * @return true if the hint was given, false if the table can't answer for this position
+     */
+    private boolean tableHint() {
+        if (this.table == null || !this.table.covers(this.currentConfig)) return false;
+        if (this.currentConfig.isSolution()) {
+            this.alertObservers(new PuzzleEvent.Solved<>(this.currentConfig));
+        } else if (!this.table.isSolvable(this.currentConfig)) {
+            this.alertObservers(new PuzzleEvent.Error<>("No solution found."));
+        } else {
+            HoppersConfig h = this.currentConfig.applyMove(this.table.nextMove(this.currentConfig));
+            this.currentConfig = h;
+            this.alertObservers(h.isSolution() ? new PuzzleEvent.Solved<>(h) : new PuzzleEvent.Hint<>(h));
+        }
+        return true;
+    }
+
+    /**
+     * Gives the hint straight from the solution store if it knows the shortest way on from the current position
+     * (or that there is none); upper bound entries only point back along some earlier search, so they don't count
+     * @return true if the hint was given, false if a search is needed
+     */
+    private boolean storedHint() {
+        SolutionStore.Entry known = this.store == null ? null : this.store.lookup(this.currentConfig);
+        if (known == null || !(known.exact() || known.isUnsolvable())) return false;
+        if (known.isUnsolvable()) {
+            this.alertObservers(new PuzzleEvent.Error<>("No solution found."));
+        } else if (this.currentConfig.isSolution()) {
+            this.alertObservers(new PuzzleEvent.Solved<>(this.currentConfig));
+        } else {
+            HoppersConfig h = this.currentConfig.applyMove(known.move());
+            this.currentConfig = h;
+            this.speculate();
+            this.alertObservers(h.isSolution() ? new PuzzleEvent.Solved<>(h) : new PuzzleEvent.Hint<>(h));
+        }
+        return true;
+    }
+
     /**
      * Handles the selection and movement according to the user
      * If the selection is legal, the coordinates of this point are stored
@@ -99,32 +177,31 @@ public class HoppersModel {
             if (runningOutOfNames == HoppersConfig.moveState.VALID) {
                 this.selectedCol = c;
                 this.selectedRow = r;
-                this.alertObservers("Selected (" + r + ", " + c + ")" + "\n" + this.currentConfig.specialPrint() + "\n");
+                this.alertObservers(new PuzzleEvent.Selected<>(c, r, this.currentConfig));
             } else if (runningOutOfNames == HoppersConfig.moveState.INVALID){
-                this.alertObservers("No frog at (" + c + ", "+ r + "). \n" + this.currentConfig.specialPrint() + "\n");
+                this.alertObservers(new PuzzleEvent.Error<>("No frog at (" + c + ", "+ r + ")."));
             }
             else {
-                this.alertObservers("This is not a legal selection.");
+                this.alertObservers(new PuzzleEvent.Error<>("This is not a legal selection."));
             }
         }
 
         else {
             HoppersConfig.moveState state = this.currentConfig.isValidMove(this.selectedCol, this.selectedRow, c, r);
             if (state == HoppersConfig.moveState.BLOCKED){
-                alertObservers("Can't jump from (" + this.selectedRow + ", " + this.selectedCol + ") to (" + r +
-                        ", " + c + ")! " +
-                        "Spot is blocked by another frog!" + "\n" + this.currentConfig.specialPrint() + "\n");
+                alertObservers(new PuzzleEvent.Error<>("Can't jump from (" + this.selectedCol + ", " + this.selectedRow +
+                        ") to (" + c + ", " + r + ")! Spot is blocked by another frog!"));
                 this.selectedCol = -1;
                 this.selectedRow = -1;
             }
             if (state == HoppersConfig.moveState.NOT_LEGAL){
-                this.alertObservers("This spot is not on the board!" + "\n" + this.currentConfig.specialPrint() + "\n");
+                this.alertObservers(new PuzzleEvent.Error<>("This spot is not on the board!"));
                 this.selectedCol = -1;
                 this.selectedRow = -1;
             }
             if (state == HoppersConfig.moveState.INVALID){
-                this.alertObservers("Can't jump from (" + this.selectedCol + ", " + this.selectedRow + ") to (" +
-                c + ", " + r + ")!" + "\n" + this.currentConfig.specialPrint() + "\n");
+                this.alertObservers(new PuzzleEvent.Error<>("Can't jump from (" + this.selectedCol + ", " +
+                        this.selectedRow + ") to (" + c + ", " + r + ")!"));
                 this.selectedCol = -1;
                 this.selectedRow = -1;
             }
@@ -165,8 +242,13 @@ public class HoppersModel {
                 }
                 hi[c][r] = x;
                 this.currentConfig = new HoppersConfig(hi, this.currentConfig.rows, this.currentConfig.cols);
-                this.alertObservers("Jumped from (" + this.selectedRow + ", " + this.selectedCol + ") to ("
-                        + r + ", " + c + ")." + "\n" + this.currentConfig.specialPrint());
+                this.speculate();
+                if (this.currentConfig.isSolution()) {
+                    this.alertObservers(new PuzzleEvent.Solved<>(this.currentConfig));
+                } else {
+                    this.alertObservers(new PuzzleEvent.Moved<>(this.selectedCol, this.selectedRow, c, r,
+                            this.currentConfig));
+                }
                 this.selectedRow = -1;
                 this.selectedCol = -1;
             }
@@ -177,17 +259,16 @@ public class HoppersModel {
      * The view calls this to add itself as an observer.
      * @param observer the view
      */
-    public void addObserver(Observer<HoppersModel, String> observer) {
-        this.observers.add(observer);
+    public void addObserver(Observer<HoppersModel, PuzzleEvent<HoppersConfig>> observer) {
+        this.events.addObserver(observer);
     }
 
     /**
-     * The model's state has changed (the counter), so inform the view via
+     * The model's state has changed, so inform the view via
      * the update method
+     * @param event - the event describing the change
      */
-    private void alertObservers(String msg) {
-        for (var observer : observers) {
-            observer.update(this, msg);
-        }
+    private void alertObservers(PuzzleEvent<HoppersConfig> event) {
+        this.events.post(event);
     }
 }
@@ -0,0 +1,343 @@
+package puzzles.hoppers.model;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Solvability of every position on one Hoppers layout, worked out once and kept on disk
+ * A position is the red frog's cell plus the set of cells holding green frogs, so a layout with n playable cells
+ * has n * 2^(n-1) of them and the table is one bit each. Every jump removes exactly one green frog, so a solvable
+ * position's distance to the goal is simply its number of green frogs; the bit is the whole distance table.
+ * The table is built by a retrograde pass: start from every single red frog goal and un-jump, one frog count at a
+ * time, marking every position that can jump into a solvable one.
+ * @author Kilian Jakstis
+ */
+public final class HoppersTable {
+
+    /**
+     * Most playable cells a table is built for; 25 (7x7) takes 50 MB
+     */
+    public static final int MAX_CELLS = 25;
+
+    /**
+     * Layouts up to this many cells are cheap enough to build when a puzzle is loaded
+     */
+    public static final int BUILD_ON_LOAD = 16;
+
+    /**
+     * File format constants
+     */
+    private static final int MAGIC = 0x48505442;
+    private static final int VERSION = 1;
+
+    /**
+     * The layout, its playable cell count and the solvability bits indexed by index(red, green)
+     */
+    private final HoppersLayout layout;
+    private final int n;
+    private final long[] bits;
+
+    /**
+     * @param layout the layout
+     * @param bits the solvability bits
+     */
+    private HoppersTable(HoppersLayout layout, long[] bits) {
+        this.layout = layout;
+        this.n = layout.getCells().length;
+        this.bits = bits;
+    }
+
+    /**
+     * Builds the table for a layout with the retrograde pass
+     * @param config any position on the layout
+     * @return the table
+     * @throws IllegalArgumentException if the layout has more than MAX_CELLS playable cells
+     */
+    public static HoppersTable build(HoppersConfig config) {
+        if (!HoppersLayout.fits(config)) throw new IllegalArgumentException("Layout too large");
+        HoppersLayout layout = new HoppersLayout(config);
+        int n = layout.getCells().length;
+        if (n > MAX_CELLS) throw new IllegalArgumentException(n + " playable cells, tables stop at " + MAX_CELLS);
+        HoppersTable table = new HoppersTable(layout, new long[(int) ((n * (1L << Math.max(0, n - 1)) + 63) >>> 6)]);
+        int[] from = layout.getFrom();
+        int[] over = layout.getOver();
+        int[] to = layout.getTo();
+        for (int red = 0; red < n; red++) {
+            table.set(red, 0);
+        }
+        long limit = 1L << Math.max(0, n - 1);
+        // positions with k greens only un-jump into positions with k + 1, so one pass per count is enough
+        for (int k = 0; k < n - 1; k++) {
+            for (int red = 0; red < n; red++) {
+                long redBit = 1L << red;
+                for (long c = (1L << k) - 1; c < limit; c = nextSubset(c)) {
+                    long green = expand(c, red);
+                    if (table.get(red, green)) {
+                        long frogs = green | redBit;
+                        for (int j = 0; j < to.length; j++) {
+                            // un-jump: the frog on to goes back to from and a green frog reappears on over
+                            if ((frogs >>> to[j] & 1) == 0 || (frogs >>> from[j] & 1) != 0
+                                    || (frogs >>> over[j] & 1) != 0) continue;
+                            if (to[j] == red) {
+                                table.set(from[j], green | 1L << over[j]);
+                            } else {
+                                table.set(red, green & ~(1L << to[j]) | 1L << from[j] | 1L << over[j]);
+                            }
+                        }
+                    }
+                    if (c == 0) break;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return the next larger number with as many bits set as c (Gosper's hack)
+     */
+    private static long nextSubset(long c) {
+        long low = c & -c;
+        long ripple = c + low;
+        return ripple | (((c ^ ripple) >>> 2) / low);
+    }
+
+    /**
+     * @return mask over n - 1 cells widened to n cells by leaving a gap at the red frog's cell
+     */
+    private static long expand(long c, int red) {
+        long below = (1L << red) - 1;
+        return (c & below) | (c & ~below) << 1;
+    }
+
+    /**
+     * @return bit index of a position
+     */
+    private long index(int red, long green) {
+        long below = (1L << red) - 1;
+        long c = (green & below) | (green >>> 1 & ~below);
+        return ((long) red << Math.max(0, this.n - 1)) + c;
+    }
+
+    /**
+     * @return is the position's bit set?
+     */
+    private boolean get(int red, long green) {
+        long i = this.index(red, green);
+        return (this.bits[(int) (i >>> 6)] >>> i & 1) != 0;
+    }
+
+    /**
+     * Marks a position solvable
+     */
+    private void set(int red, long green) {
+        long i = this.index(red, green);
+        this.bits[(int) (i >>> 6)] |= 1L << i;
+    }
+
+    /**
+     * Can the table answer for this position: same layout and exactly one red frog?
+     * @param config a position
+     * @return true if it can
+     */
+    public boolean covers(HoppersConfig config) {
+        return HoppersLayout.fits(config) && this.layout.sameShape(new HoppersLayout(config))
+                && Long.bitCount(this.layout.pack(config, HoppersConfig.RED)) == 1;
+    }
+
+    /**
+     * @param config a covered position
+     * @return true if it can be solved
+     */
+    public boolean isSolvable(HoppersConfig config) {
+        long red = this.layout.pack(config, HoppersConfig.RED);
+        return this.get(Long.numberOfTrailingZeros(red), this.layout.pack(config, HoppersConfig.GREEN));
+    }
+
+    /**
+     * @param config a covered position
+     * @return number of moves to the goal, or -1 if there is no solution
+     */
+    public int distance(HoppersConfig config) {
+        return this.isSolvable(config) ? Long.bitCount(this.layout.pack(config, HoppersConfig.GREEN)) : -1;
+    }
+
+    /**
+     * A jump that keeps the position solvable, found by looking up each legal jump's result
+     * @param config a covered, solvable, unsolved position
+     * @return the move packed as in HoppersConfig.moveTo, or -1 if there is none
+     */
+    public int nextMove(HoppersConfig config) {
+        long green = this.layout.pack(config, HoppersConfig.GREEN);
+        long red = this.layout.pack(config, HoppersConfig.RED);
+        int r = Long.numberOfTrailingZeros(red);
+        long frogs = green | red;
+        int[] from = this.layout.getFrom();
+        int[] over = this.layout.getOver();
+        int[] to = this.layout.getTo();
+        for (int j = 0; j < to.length; j++) {
+            if ((frogs >>> from[j] & 1) == 0 || (green >>> over[j] & 1) == 0 || (frogs >>> to[j] & 1) != 0) continue;
+            long next = green & ~(1L << over[j]);
+            boolean ok = from[j] == r ? this.get(to[j], next)
+                    : this.get(r, next & ~(1L << from[j]) | 1L << to[j]);
+            if (ok) return this.layout.move(j);
+        }
+        return -1;
+    }
+
+    /**
+     * Where the table for a layout lives: the puzzles.tables system property or ~/.puzzles/tables, named by size and
+     * a hash of the playable cells
+     * @param config any position on the layout
+     * @return the file
+     */
+    public static Path fileFor(HoppersConfig config) {
+        String dir = System.getProperty("puzzles.tables",
+                Path.of(System.getProperty("user.home"), ".puzzles", "tables").toString());
+        int shape = Arrays.hashCode(new HoppersLayout(config).getCells());
+        return Path.of(dir, "hoppers-" + config.rows + "x" + config.cols + "-" + Integer.toHexString(shape) + ".table");
+    }
+
+    /**
+     * The table for a puzzle's layout: read from fileFor if it has been built, otherwise built and saved if the
+     * layout is small enough to do that on the spot
+     * @param config any position on the layout
+     * @return the table, or null if there is none
+     */
+    public static HoppersTable forLayout(HoppersConfig config) {
+        if (!HoppersLayout.fits(config)) return null;
+        Path file = fileFor(config);
+        try {
+            if (Files.exists(file)) {
+                HoppersTable table = load(file);
+                if (table.layout.sameShape(new HoppersLayout(config))) return table;
+            }
+            if (new HoppersLayout(config).getCells().length <= BUILD_ON_LOAD) {
+                HoppersTable table = build(config);
+                table.save(file);
+                return table;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Hoppers table unavailable: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Writes the table: a header with the layout, then the bits. Written to a temporary file and moved into place
+     * so readers never see half a table
+     * @param file where to save it
+     * @throws IOException if writing fails
+     */
+    public void save(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            int[] cells = this.layout.getCells();
+            ByteBuffer header = ByteBuffer.allocate(20 + 4 * cells.length);
+            header.putInt(MAGIC).putInt(VERSION).putInt(this.layout.getRows()).putInt(this.layout.getCols())
+                    .putInt(cells.length);
+            for (int cell : cells) {
+                header.putInt(cell);
+            }
+            header.flip();
+            while (header.hasRemaining()) out.write(header);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(1 << 20);
+            for (int i = 0; i < this.bits.length; ) {
+                chunk.clear();
+                LongBuffer longs = chunk.asLongBuffer();
+                int count = Math.min(longs.remaining(), this.bits.length - i);
+                longs.put(this.bits, i, count);
+                chunk.limit(count * 8);
+                while (chunk.hasRemaining()) out.write(chunk);
+                i += count;
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a table written by save
+     * @param file the table file
+     * @return the table
+     * @throws IOException if it can't be read or isn't a table
+     */
+    public static HoppersTable load(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(20);
+            readFully(in, header);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a Hoppers table: " + file);
+            }
+            int rows = header.getInt();
+            int cols = header.getInt();
+            int n = header.getInt();
+            if (n < 1 || n > MAX_CELLS || rows * cols < n) throw new IOException("Bad Hoppers table: " + file);
+            ByteBuffer cells = ByteBuffer.allocate(4 * n);
+            readFully(in, cells);
+            char[][] board = new char[cols][rows];
+            for (char[] line : board) {
+                Arrays.fill(line, HoppersConfig.INVALID);
+            }
+            for (int i = 0; i < n; i++) {
+                int cell = cells.getInt();
+                board[cell % cols][cell / cols] = HoppersConfig.VALID;
+            }
+            HoppersLayout layout = new HoppersLayout(new HoppersConfig(board, rows, cols));
+            long[] bits = new long[(int) ((n * (1L << (n - 1)) + 63) >>> 6)];
+            ByteBuffer chunk = ByteBuffer.allocateDirect(1 << 20);
+            for (int i = 0; i < bits.length; ) {
+                chunk.clear();
+                chunk.limit(Math.min(chunk.capacity(), (bits.length - i) * 8));
+                readFully(in, chunk);
+                LongBuffer longs = chunk.asLongBuffer();
+                int count = longs.remaining();
+                longs.get(bits, i, count);
+                i += count;
+            }
+            return new HoppersTable(layout, bits);
+        }
+    }
+
+    /**
+     * Fills a buffer from a channel and flips it
+     */
+    private static void readFully(FileChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) throw new IOException("Hoppers table cut short");
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Builds and saves the table for a puzzle file's layout
+     * Usage: java puzzles.hoppers.model.HoppersTable puzzle-file
+     * @param args the puzzle file
+     * @throws IOException if the table can't be saved
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: java HoppersTable puzzle-file");
+            return;
+        }
+        HoppersConfig config = new HoppersConfig(args[0]);
+        long start = System.nanoTime();
+        HoppersTable table = build(config);
+        Path file = fileFor(config);
+        table.save(file);
+        long solvable = 0;
+        for (long word : table.bits) {
+            solvable += Long.bitCount(word);
+        }
+        System.out.printf("%d cells, %d of %d positions solvable, built in %.1f s, saved to %s%n", table.n, solvable,
+                table.n * (1L << (table.n - 1)), (System.nanoTime() - start) / 1e9, file);
+    }
+}
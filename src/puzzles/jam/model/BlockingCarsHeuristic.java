@@ -0,0 +1,42 @@
+package puzzles.jam.model;
+import puzzles.common.solver.Configuration;
+import puzzles.common.solver.Heuristic;
+
+/**
+ * Admissible heuristic for Traffic Jam: the distance from the 'X' car to the right edge plus the number of
+ * cars standing in that stretch of its row. Every move shifts one car by one cell, so the 'X' car needs at least
+ * the distance and every blocking car needs at least one move of its own.
+ * @author Kilian Jakstis
+ */
+public class BlockingCarsHeuristic implements Heuristic {
+
+    /**
+     * Estimate the moves left
+     * @param config a JamConfig
+     * @return distance to the exit plus the number of blocking cars
+     */
+    @Override
+    public int estimate(Configuration config) {
+        JamConfig jam = (JamConfig) config;
+        for (Car c : jam.cars) {
+            if (c.getID() == 'X') {
+                if (c.isVertCar() && c.getsR() != c.geteR()) {
+                    // a vertical 'X' car never moves sideways
+                    return 0;
+                }
+                int estimate = 0;
+                char last = JamConfig.EMPTY;
+                for (int x = c.geteC() + 1; x < jam.getCols(); x++) {
+                    estimate++;
+                    char cell = jam.boardChars[x][c.getsR()];
+                    if (cell != JamConfig.EMPTY && cell != last) {
+                        estimate++;
+                    }
+                    last = cell;
+                }
+                return estimate;
+            }
+        }
+        return 0;
+    }
+}
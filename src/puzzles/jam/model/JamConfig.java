@@ -1,11 +1,14 @@
 package puzzles.jam.model;
 import puzzles.common.solver.Configuration;
+import puzzles.common.solver.Fingerprints;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 
 /**
  * Configuration class for Traffic Jam boards
@@ -28,29 +31,47 @@ public class JamConfig implements Configuration {
      */
     public JamConfig(String filename){
         try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String[] s = br.readLine().split("\s++");
-            // get row, col, and number of car info from file
-            this.rows = Integer.parseInt(s[0]);
-            this.cols = Integer.parseInt(s[1]);
-            String line = br.readLine();
-            this.cars = new Car[Integer.parseInt(line)];
-            line = br.readLine();
-            int i = 0;
-            // create Cars and add to cars array
-            while (line != null) {
-                s = line.split("\s++");
-                cars[i] = (new Car(s[0].charAt(0), Integer.parseInt(s[1]), Integer.parseInt(s[2]),
-                        Integer.parseInt(s[3]), Integer.parseInt(s[4])));
-                line = br.readLine();
-                i++;
-            }
-            // create the board
-            this.boardChars = makeBoard(this.cars);
+            this.read(br);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Constructor for Jam puzzle configuration read from text in the Jam configuration file format
+     * @param in reader over the puzzle text
+     * @throws IOException if reading fails
+     */
+    public JamConfig(Reader in) throws IOException {
+        this.read(new BufferedReader(in));
+    }
+
+    /**
+     * Reads the rows, cols and cars from Jam configuration file text and builds the board
+     * @param br reader over the puzzle text
+     * @throws IOException if reading fails
+     */
+    private void read(BufferedReader br) throws IOException {
+        String[] s = br.readLine().split("\s++");
+        // get row, col, and number of car info from file
+        this.rows = Integer.parseInt(s[0]);
+        this.cols = Integer.parseInt(s[1]);
+        String line = br.readLine();
+        this.cars = new Car[Integer.parseInt(line.trim())];
+        line = br.readLine();
+        int i = 0;
+        // create Cars and add to cars array
+        while (line != null && i < this.cars.length) {
+            s = line.split("\s++");
+            cars[i] = (new Car(s[0].charAt(0), Integer.parseInt(s[1]), Integer.parseInt(s[2]),
+                    Integer.parseInt(s[3]), Integer.parseInt(s[4])));
+            line = br.readLine();
+            i++;
+        }
+        // create the board
+        this.boardChars = makeBoard(this.cars);
+    }
+
     /**
      * Constructor for JamConfigs made with row, col, and car array instead of filename
      * Used for generating configurations arising from user moves
@@ -67,6 +88,79 @@ public class JamConfig implements Configuration {
         this.boardChars = this.makeBoard(this.cars);
     }
 
+    /**
+     * Constructor for JamConfigs made from a filled in board, as read from the bulk puzzle format
+     * Every letter on the board is a car; its extent is taken from the cells it covers
+     * @param board the board, indexed board[col][row], using EMPTY for open cells
+     * @param cols number of cols
+     * @param rows number of rows
+     * @throws IllegalArgumentException if a car isn't a straight unbroken line of 2 or more cells
+     */
+    public JamConfig(char[][] board, int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        // bounds of every car id, indexed by the char itself
+        int[] minR = new int[128];
+        int[] minC = new int[128];
+        int[] maxR = new int[128];
+        int[] maxC = new int[128];
+        int[] size = new int[128];
+        boolean[] seen = new boolean[128];
+        char[] order = new char[cols * rows];
+        int count = 0;
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                char c = board[x][y];
+                if (c == EMPTY) continue;
+                if (c >= 128) throw new IllegalArgumentException("Bad car id: " + c);
+                if (!seen[c]) {
+                    seen[c] = true;
+                    order[count++] = c;
+                    minR[c] = y;
+                    minC[c] = x;
+                    maxC[c] = x;
+                }
+                maxR[c] = y;
+                minC[c] = Math.min(minC[c], x);
+                maxC[c] = Math.max(maxC[c], x);
+                size[c]++;
+            }
+        }
+        this.cars = new Car[count];
+        for (int i = 0; i < count; i++) {
+            char c = order[i];
+            // one row or one col, with every cell between the ends filled
+            boolean straight = minR[c] == maxR[c] || minC[c] == maxC[c];
+            if (!straight || size[c] < 2 || size[c] != maxR[c] - minR[c] + maxC[c] - minC[c] + 1) {
+                throw new IllegalArgumentException("Car " + c + " isn't a straight line of 2 or more cells");
+            }
+            this.cars[i] = new Car(c, minR[c], minC[c], maxR[c], maxC[c]);
+        }
+        this.boardChars = board;
+    }
+
+    /**
+     * Constructor for JamConfigs unpacked from the encoding made by encode()
+     * @param packed the packed bytes
+     */
+    public JamConfig(byte[] packed) {
+        this.cols = packed[0];
+        this.rows = packed[1];
+        this.cars = new Car[packed[2]];
+        for (int i = 0; i < this.cars.length; i++) {
+            int p = 3 + 4 * i;
+            int r = packed[p + 1];
+            int c = packed[p + 2];
+            int length = packed[p + 3] & 0x7F;
+            if ((packed[p + 3] & 0x80) != 0) {
+                this.cars[i] = new Car((char) packed[p], r, c, r + length - 1, c);
+            } else {
+                this.cars[i] = new Car((char) packed[p], r, c, r, c + length - 1);
+            }
+        }
+        this.boardChars = makeBoard(this.cars);
+    }
+
     /**
      * Checks if the configuration is a solution to the puzzle
      * @return (the red 'X' car is touching the right side of the board, T or F?)
@@ -159,6 +253,157 @@ public class JamConfig implements Configuration {
         return neighbors;
     }
 
+    /**
+     * The one-step slides getNeighbors makes, in the same order, without building the neighbors
+     * @return moves packed as in moveTo
+     */
+    @Override
+    public int[] getMoves() {
+        int[] moves = new int[2 * this.cars.length];
+        int count = 0;
+        for (int i = 0; i < this.cars.length; i++) {
+            Car c = this.cars[i];
+            if (c.isVertCar()) {
+                if (c.geteR() + 1 < this.rows && this.boardChars[c.geteC()][c.geteR() + 1] == EMPTY) {
+                    moves[count++] = (i << 8) | 1;
+                }
+                if (c.getsR() - 1 >= 0 && this.boardChars[c.geteC()][c.getsR() - 1] == EMPTY) {
+                    moves[count++] = (i << 8) | 0xFF;
+                }
+            } else {
+                if (c.geteC() + 1 < this.cols && this.boardChars[c.geteC() + 1][c.geteR()] == EMPTY) {
+                    moves[count++] = (i << 8) | 1;
+                }
+                if (c.getsC() - 1 >= 0 && this.boardChars[c.getsC() - 1][c.getsR()] == EMPTY) {
+                    moves[count++] = (i << 8) | 0xFF;
+                }
+            }
+        }
+        return Arrays.copyOf(moves, count);
+    }
+
+    /**
+     * Packs the move that leads to a neighbor as (car index << 8) | (delta & 0xFF), where delta is how far the
+     * car moved along its row or column
+     * @param neighbor a configuration one move away
+     * @return the packed move
+     */
+    @Override
+    public int moveTo(Configuration neighbor) {
+        JamConfig other = (JamConfig) neighbor;
+        for (int i = 0; i < this.cars.length; i++) {
+            int delta = (other.cars[i].getsR() - this.cars[i].getsR()) + (other.cars[i].getsC() - this.cars[i].getsC());
+            if (delta != 0) {
+                return (i << 8) | (delta & 0xFF);
+            }
+        }
+        throw new IllegalArgumentException("Configurations are not one move apart");
+    }
+
+    /**
+     * Moves one car by the packed car index and delta made by moveTo
+     * @param move the packed move
+     * @return the configuration after the move
+     */
+    @Override
+    public JamConfig applyMove(int move) {
+        int index = move >>> 8;
+        int delta = (byte) move;
+        Car c = this.cars[index];
+        Car[] copy = this.cars.clone();
+        if (c.isVertCar()) {
+            copy[index] = new Car(c.getID(), c.getsR() + delta, c.getsC(), c.geteR() + delta, c.geteC());
+        } else {
+            copy[index] = new Car(c.getID(), c.getsR(), c.getsC() + delta, c.geteR(), c.geteC() + delta);
+        }
+        return new JamConfig(this.cols, this.rows, copy);
+    }
+
+    /**
+     * A car that slid can always slide back
+     * @return true
+     */
+    @Override
+    public boolean isReversible() {
+        return true;
+    }
+
+    /**
+     * Relabels the cars in order of their top left cell, reading row by row, as A, B, C... skipping X, which keeps
+     * its letter because it is the car that has to get out. Boards that only differ in car letters or in the order
+     * of their cars in the file come out identical
+     * @return the relabeled configuration
+     */
+    @Override
+    public JamConfig canonical() {
+        int[] order = this.canonicalOrder();
+        Car[] relabeled = new Car[this.cars.length];
+        char next = 'A';
+        for (int i = 0; i < order.length; i++) {
+            Car c = this.cars[order[i]];
+            char id = c.getID();
+            if (id != 'X') {
+                if (next == 'X') next++;
+                id = next++;
+            }
+            relabeled[i] = new Car(id, c.getsR(), c.getsC(), c.geteR(), c.geteC());
+        }
+        return new JamConfig(this.cols, this.rows, relabeled);
+    }
+
+    /**
+     * Canonical car i is car canonicalOrder()[i] here, so only the car index of each move changes
+     * @param moves packed moves of a path from canonical()
+     * @return the moves for this configuration's cars
+     */
+    @Override
+    public int[] fromCanonical(int[] moves) {
+        int[] order = this.canonicalOrder();
+        int[] mapped = new int[moves.length];
+        for (int i = 0; i < moves.length; i++) {
+            mapped[i] = (order[moves[i] >>> 8] << 8) | (moves[i] & 0xFF);
+        }
+        return mapped;
+    }
+
+    /**
+     * @return indices of the cars sorted by their top left cell, row by row
+     */
+    private int[] canonicalOrder() {
+        Integer[] order = new Integer[this.cars.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> this.cars[i].getsR() * this.cols + this.cars[i].getsC()));
+        return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Packs the configuration as cols, rows and car count, then four bytes per car:
+     * id, start row, start col and length (high bit set for vertical cars)
+     * @return the packed bytes
+     */
+    @Override
+    public byte[] encode() {
+        byte[] packed = new byte[3 + 4 * this.cars.length];
+        packed[0] = (byte) this.cols;
+        packed[1] = (byte) this.rows;
+        packed[2] = (byte) this.cars.length;
+        for (int i = 0; i < this.cars.length; i++) {
+            Car c = this.cars[i];
+            int p = 3 + 4 * i;
+            packed[p] = (byte) c.getID();
+            packed[p + 1] = (byte) c.getsR();
+            packed[p + 2] = (byte) c.getsC();
+            if (c.isVertCar()) {
+                packed[p + 3] = (byte) (0x80 | (c.geteR() - c.getsR() + 1));
+            } else {
+                packed[p + 3] = (byte) (c.geteC() - c.getsC() + 1);
+            }
+        }
+        return packed;
+    }
+
     /**
      * Writes the game's board as a string (used this for easier debugging purposes)
      * @return string depiction of the game's current position
@@ -285,6 +530,58 @@ public class JamConfig implements Configuration {
         return x;
     }
 
+    /**
+     * 64 bit hash of the board, cell by cell
+     * @return the fingerprint
+     */
+    @Override
+    public long fingerprint() {
+        return Fingerprints.mix(this.rawFingerprint());
+    }
+
+    /**
+     * The fingerprint before mixing: the sum of every cell times SEED^(cells - k) for cell k in column-major order,
+     * so a move changes it by a few terms
+     * @return the raw sum
+     */
+    private long rawFingerprint() {
+        long h = 0;
+        for (int i = 0; i < this.cols; i++) {
+            for (int j = 0; j < this.rows; j++) {
+                h = (h + this.boardChars[i][j]) * Fingerprints.SEED;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Patches the raw fingerprint for every move: the car's id leaves its old cells and fills its new ones, and
+     * the cells it keeps cancel out
+     * @param moves packed moves from getMoves
+     * @return fingerprint after each move
+     */
+    @Override
+    public long[] fingerprintsAfter(int[] moves) {
+        long raw = this.rawFingerprint();
+        int n = this.cols * this.rows;
+        long[] prints = new long[moves.length];
+        for (int m = 0; m < moves.length; m++) {
+            Car c = this.cars[moves[m] >>> 8];
+            int delta = (byte) moves[m];
+            int dC = c.isVertCar() ? 0 : delta;
+            int dR = c.isVertCar() ? delta : 0;
+            long sum = 0;
+            for (int i = c.getsC(); i <= c.geteC(); i++) {
+                for (int j = c.getsR(); j <= c.geteR(); j++) {
+                    sum += Fingerprints.power(n - ((i + dC) * this.rows + j + dR))
+                            - Fingerprints.power(n - (i * this.rows + j));
+                }
+            }
+            prints[m] = Fingerprints.mix(raw + (c.getID() - EMPTY) * sum);
+        }
+        return prints;
+    }
+
     /**
      * Check that a selection is made on the board and that it is not an empty cell
      * @param x x-coordinate of selection
@@ -330,17 +627,20 @@ public class JamConfig implements Configuration {
             }
             if (theCar != null) {
                 if (this.boardChars[x2][y2] == EMPTY) {
+                    // the cars are shared with this config (and solvers may be reading it), so never move one in place
+                    int dR = 0;
+                    int dC = 0;
                     if (theCar.isVertCar()){
                         if (x1 == x2 && y1 != y2){
                             if (y1 > y2){
                                 if (theCar.getsR() == y2 + 1){
-                                    theCar.setR(-1);
+                                    dR = -1;
                                 } else {
                                     return null;
                                 }
                             } else {
                                 if (theCar.geteR() == y2 - 1){
-                                    theCar.setR(1);
+                                    dR = 1;
                                 } else {
                                     return null;
                                 }
@@ -350,23 +650,25 @@ public class JamConfig implements Configuration {
                         if (y1 == y2 && x1 != x2){
                             if (x1 > x2){
                                 if (theCar.getsC() == x2 + 1){
-                                    theCar.setC(-1);
+                                    dC = -1;
                                 } else {
                                     return null;
                                 }
                             } else {
                                 if (theCar.geteC() == x2 - 1){
-                                    theCar.setC(1);
+                                    dC = 1;
                                 } else {
                                     return null;
                                 }
                             }
                         }
                     }
+                    Car moved = new Car(theCar.getID(), theCar.getsR() + dR, theCar.getsC() + dC,
+                            theCar.geteR() + dR, theCar.geteC() + dC);
                     Car[] newCars = this.cars.clone();
                     for (int i = 0; i< newCars.length; i++) {
                         if (newCars[i].getID() == theCar.getID()) {
-                            newCars[i] = theCar;
+                            newCars[i] = moved;
                         }
                     }
                     return new JamConfig(this.cols, this.rows, newCars);
@@ -1,10 +1,12 @@
 package puzzles.jam.model;
+import puzzles.common.EventDispatcher;
 import puzzles.common.Observer;
-import puzzles.common.solver.Configuration;
+import puzzles.common.PuzzleEvent;
+import puzzles.common.solver.Solution;
+import puzzles.common.solver.SolutionStore;
 import puzzles.common.solver.Solver;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import puzzles.common.solver.SpeculativeSolver;
+import java.util.concurrent.Executor;
 
 /**
  * Model for Traffic Jam game
@@ -13,21 +15,34 @@ import java.util.List;
 public class JamModel {
 
     /**
-     * the collection of observers of this model
+     * delivers events to the observers of this model
      */
-    private final List<Observer<JamModel, String>> observers = new LinkedList<>();
+    private final EventDispatcher<JamModel, PuzzleEvent<JamConfig>> events;
 
     public JamConfig currentConfig; // holds the current configuration of the game
     public JamConfig startConfig; // holds the initial configuration of the game for resetting purposes
     private final Solver solver; // holds the solver instance
+    private final SolutionStore store; // what earlier searches learned, or null if it couldn't be opened
+    private final SpeculativeSolver speculation; // solves ahead of the player in the background
     public Integer selectedY = -1; // holds the selected X and Y coordinates when a car is selected on the GUI
     public Integer selectedX = -1; // ^
 
     /**
-     * Creates the model and instantiates the solver field
+     * Creates the model and instantiates the solver field; events are delivered on a background thread
      */
     public JamModel() {
-        this.solver = new Solver();
+        this(EventDispatcher.background("jam-events"));
+    }
+
+    /**
+     * Creates the model and instantiates the solver field
+     * @param executor runs the delivery of events to observers, e.g. the GUI thread
+     */
+    public JamModel(Executor executor) {
+        this.store = SolutionStore.shared();
+        this.solver = new Solver(this.store);
+        this.speculation = new SpeculativeSolver(this.store);
+        this.events = new EventDispatcher<>(this, executor, PuzzleEvent::isStateUpdate);
     }
 
     /**
@@ -35,19 +50,17 @@ public class JamModel {
      * Adds the passed-in class to the Model's observer list
      * @param observer the observing class
      */
-    public void addObserver(Observer<JamModel, String> observer) {
-        this.observers.add(observer);
+    public void addObserver(Observer<JamModel, PuzzleEvent<JamConfig>> observer) {
+        this.events.addObserver(observer);
     }
 
     /**
      * The model's state has changed, so inform the observers via
      * the update method
-     * param msg: the msg string describing how the view should update
+     * @param event the event describing how the view should update
      */
-    private void alertObservers(String msg) {
-        for (var observer : observers) {
-            observer.update(this, msg);
-        }
+    private void alertObservers(PuzzleEvent<JamConfig> event) {
+        this.events.post(event);
     }
 
     /**
@@ -60,11 +73,12 @@ public class JamModel {
         this.selectedY = -1;
         this.startConfig = new JamConfig(filename);
         this.currentConfig = startConfig;
+        this.speculation.restart(this.startConfig);
         String[] s = filename.split("/");
         if (s.length == 3) {
-            this.alertObservers("Loaded: " + s[2] + "\n" + startConfig.specialPrint() + "\n");
+            this.alertObservers(new PuzzleEvent.Loaded<>(s[2], startConfig));
         } else {
-            this.alertObservers("Loaded: " + filename + "\n" + startConfig.specialPrint() + "\n");
+            this.alertObservers(new PuzzleEvent.Loaded<>(filename, startConfig));
         }
     }
 
@@ -73,7 +87,8 @@ public class JamModel {
      */
     public void reset() {
         this.currentConfig = this.startConfig;
-        this.alertObservers("Puzzle reset: " + "\n" + startConfig.specialPrint() + "\n");
+        this.speculation.speculate(this.currentConfig);
+        this.alertObservers(new PuzzleEvent.Reset<>(startConfig));
     }
 
     /**
@@ -82,20 +97,44 @@ public class JamModel {
      * new configuration. Observers are then updated.
      *
      * If the position has no solution or is already solved, the observers are updated appropriately.
+     * Usually the answer was worked out in the background since the last move.
      */
     public void hint() {
-        ArrayList<Configuration> path = (ArrayList<Configuration>) this.solver.findPath(this.currentConfig);
+        if (this.storedHint()) return;
+        Solution path = this.speculation.solve(this.currentConfig, this.solver);
         if (path == null) {
-            this.alertObservers("No solution found.");
+            this.alertObservers(new PuzzleEvent.Error<>("No solution found."));
             return;
         }
         if (this.currentConfig.isSolution()) {
-            this.alertObservers("Already solved!");
+            this.alertObservers(new PuzzleEvent.Solved<>(this.currentConfig));
         } else {
             JamConfig h = (JamConfig) path.get(1);
             this.currentConfig = h;
-            this.alertObservers("Next step: " + "\n" + h.specialPrint() + "\n");
+            this.speculation.speculate(h);
+            this.alertObservers(h.isSolution() ? new PuzzleEvent.Solved<>(h) : new PuzzleEvent.Hint<>(h));
+        }
+    }
+
+    /**
+     * Gives the hint straight from the solution store if it knows the shortest way on from the current position
+     * (or that there is none); upper bound entries only point back along some earlier search, so they don't count
+     * @return true if the hint was given, false if a search is needed
+     */
+    private boolean storedHint() {
+        SolutionStore.Entry known = this.store == null ? null : this.store.lookup(this.currentConfig);
+        if (known == null || !(known.exact() || known.isUnsolvable())) return false;
+        if (known.isUnsolvable()) {
+            this.alertObservers(new PuzzleEvent.Error<>("No solution found."));
+        } else if (this.currentConfig.isSolution()) {
+            this.alertObservers(new PuzzleEvent.Solved<>(this.currentConfig));
+        } else {
+            JamConfig h = this.currentConfig.applyMove(known.move());
+            this.currentConfig = h;
+            this.speculation.speculate(h);
+            this.alertObservers(h.isSolution() ? new PuzzleEvent.Solved<>(h) : new PuzzleEvent.Hint<>(h));
         }
+        return true;
     }
 
     /**
@@ -110,9 +149,9 @@ public class JamModel {
             if (runningOutOfNames) {
                 this.selectedX = x;
                 this.selectedY = y;
-                this.alertObservers("Selected (" + x + ", " + y + ")" + "\n" + this.currentConfig.specialPrint() + "\n");
+                this.alertObservers(new PuzzleEvent.Selected<>(x, y, this.currentConfig));
             } else {
-                this.alertObservers("No car at (" + x + ", " + y + ")!");
+                this.alertObservers(new PuzzleEvent.Error<>("No car at (" + x + ", " + y + ")!"));
             }
         } else {
             // handles if there was a previous selection; checks that the proposed move is legal and if it is, changes
@@ -121,12 +160,16 @@ public class JamModel {
             if (isValidMove != null){
                 // the move is legal
                 this.currentConfig = isValidMove;
-                this.alertObservers("Moved from (" + this.selectedX + ", " + this.selectedY + ") to ("
-                        + x + ", " + y + ")." + "\n" + this.currentConfig.specialPrint());
+                this.speculation.speculate(this.currentConfig);
+                if (this.currentConfig.isSolution()) {
+                    this.alertObservers(new PuzzleEvent.Solved<>(this.currentConfig));
+                } else {
+                    this.alertObservers(new PuzzleEvent.Moved<>(this.selectedX, this.selectedY, x, y, this.currentConfig));
+                }
 
             } else {
                 // the move is not legal
-                this.alertObservers("Not a legal move");
+                this.alertObservers(new PuzzleEvent.Error<>("Not a legal move"));
             }
             this.selectedX = -1;
             this.selectedY = -1;